@@ -1,45 +1,156 @@
 package com.example.chess;
 
+import com.example.chess.engine.AttackMap;
+import com.example.chess.engine.Fen;
+import com.example.chess.engine.Move;
+import com.example.chess.engine.Position;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Board {
-    private List<Piece> pieceList;
+    private List<Piece> pieceList, pieceView;
+    private Piece[] squares;
+    private Position position;
+    private AttackMap attackMap;
 
     public Board() {
+        this(Fen.INITIAL);
+    }
+
+    /**
+     * Sets up the position of the FEN text.
+     */
+    public Board(CharSequence fen) {
         pieceList = new ArrayList<>();
-        init();
+        pieceView = Collections.unmodifiableList(pieceList);
+        squares = new Piece[64];
+        position = new Position();
+        attackMap = new AttackMap();
+        init(fen);
     }
 
-    private void init() {
-        pieceList.add(new Piece(1, 1, Player.BLACK, PieceModel.ROOK, R.drawable.rookblack));
-        pieceList.add(new Piece(1, 2, Player.BLACK, PieceModel.KNIGHT, R.drawable.knightblack));
-        pieceList.add(new Piece(1, 3, Player.BLACK, PieceModel.BISHOP, R.drawable.bishopblack));
-        pieceList.add(new Piece(1, 4, Player.BLACK, PieceModel.QUEEN, R.drawable.queenblack));
-        pieceList.add(new Piece(1, 5, Player.BLACK, PieceModel.KING, R.drawable.kingblack));
-        pieceList.add(new Piece(1, 6, Player.BLACK, PieceModel.BISHOP, R.drawable.bishopblack));
-        pieceList.add(new Piece(1, 7, Player.BLACK, PieceModel.KNIGHT, R.drawable.knightblack));
-        pieceList.add(new Piece(1, 8, Player.BLACK, PieceModel.ROOK, R.drawable.rookblack));
+    private void init(CharSequence fen) {
+        Fen.parse(fen, position);
+        for (long pieces = position.occupied(); pieces != 0L; pieces &= pieces - 1) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            Player player = position.playerAt(square);
+            PieceModel model = position.modelAt(square);
+            Piece piece = new Piece(Position.row(square), Position.column(square), player, model, resID(player, model));
+            pieceList.add(piece);
+            squares[square] = piece;
+        }
+        attackMap.reset(position);
+    }
 
-        for (int i = 1; i <= 8; i++) {
-            pieceList.add(new Piece(2, i, Player.BLACK, PieceModel.PAWN, R.drawable.pawnblack));
+    /**
+     * Returns the piece in the square, or null if it's empty or out of the board.
+     */
+    public Piece getPiece(int row, int column) {
+        if (row < 1 || row > 8 || column < 1 || column > 8)
+            return null;
+        int square = Position.square(row, column);
+        if (position.isEmpty(square))
+            return null;
+        return squares[square];
+    }
+
+    /**
+     * Returns the king of the player, or null if it isn't on the board.
+     */
+    public Piece getKing(Player player) {
+        int square = position.kingSquare(player);
+        return square == Position.NO_SQUARE ? null : squares[square];
+    }
+
+    /**
+     * Plays a legal move on the pieces to draw and on the position.
+     */
+    public void play(int move) {
+        int from = Move.from(move), to = Move.to(move);
+        Piece piece = squares[from];
+        if (Move.isEnPassant(move))
+            takePiece(Position.square(Position.row(from), Position.column(to)));
+        takePiece(to);
+        placePiece(piece, to);
+        if (Move.isCastle(move)) { // the rook jumps over the king
+            int row = Position.row(to);
+            if (Position.column(to) == 7)
+                placePiece(squares[Position.square(row, 8)], Position.square(row, 6));
+            else
+                placePiece(squares[Position.square(row, 1)], Position.square(row, 4));
         }
+        PieceModel promotion = Move.promotion(move);
+        if (promotion != null) {
+            piece.setModel(promotion);
+            piece.setResID(resID(piece.getPlayer(), promotion));
+        }
+        attackMap.play(position, move);
+    }
 
-        for (int i = 1; i <= 8; i++) {
-            pieceList.add(new Piece(7, i, Player.WHITE, PieceModel.PAWN, R.drawable.pawnwhite));
+    /**
+     * Changes the model of a crowned pawn.
+     */
+    public void promote(Piece piece, PieceModel model, int resID) {
+        int square = Position.square(piece.getRow(), piece.getColumn());
+        position.remove(square);
+        position.put(piece.getPlayer(), model, square);
+        attackMap.refresh(position, square);
+        piece.setModel(model);
+        piece.setResID(resID);
+    }
+
+    private void takePiece(int square) {
+        if (squares[square] != null) {
+            pieceList.remove(squares[square]);
+            squares[square] = null;
         }
+    }
+
+    private void placePiece(Piece piece, int square) {
+        squares[Position.square(piece.getRow(), piece.getColumn())] = null;
+        squares[square] = piece;
+        piece.setRow(Position.row(square));
+        piece.setColumn(Position.column(square));
+    }
 
-        pieceList.add(new Piece(8, 1, Player.WHITE, PieceModel.ROOK, R.drawable.rookwhite));
-        pieceList.add(new Piece(8, 2, Player.WHITE, PieceModel.KNIGHT, R.drawable.knightwhite));
-        pieceList.add(new Piece(8, 3, Player.WHITE, PieceModel.BISHOP, R.drawable.bishopwhite));
-        pieceList.add(new Piece(8, 4, Player.WHITE, PieceModel.QUEEN, R.drawable.queenwhite));
-        pieceList.add(new Piece(8, 5, Player.WHITE, PieceModel.KING, R.drawable.kingwhite));
-        pieceList.add(new Piece(8, 6, Player.WHITE, PieceModel.BISHOP, R.drawable.bishopwhite));
-        pieceList.add(new Piece(8, 7, Player.WHITE, PieceModel.KNIGHT, R.drawable.knightwhite));
-        pieceList.add(new Piece(8, 8, Player.WHITE, PieceModel.ROOK, R.drawable.rookwhite));
+    /**
+     * Returns the drawable of a piece.
+     */
+    public static int resID(Player player, PieceModel model) {
+        boolean white = player.equals(Player.WHITE);
+        switch (model) {
+            case KING:
+                return white ? R.drawable.kingwhite : R.drawable.kingblack;
+            case QUEEN:
+                return white ? R.drawable.queenwhite : R.drawable.queenblack;
+            case ROOK:
+                return white ? R.drawable.rookwhite : R.drawable.rookblack;
+            case KNIGHT:
+                return white ? R.drawable.knightwhite : R.drawable.knightblack;
+            case BISHOP:
+                return white ? R.drawable.bishopwhite : R.drawable.bishopblack;
+            default:
+                return white ? R.drawable.pawnwhite : R.drawable.pawnblack;
+        }
     }
 
+    /**
+     * Pieces to draw, read only: changes go through play & promote.
+     */
     public List<Piece> getPieceList() {
-        return pieceList;
+        return pieceView;
+    }
+
+    public Position getPosition() {
+        return position;
+    }
+
+    /**
+     * Squares each player attacks, updated by play & promote.
+     */
+    public AttackMap getAttackMap() {
+        return attackMap;
     }
 }
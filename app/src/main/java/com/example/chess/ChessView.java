@@ -6,30 +6,53 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.graphics.drawable.ColorDrawable;
-import android.media.MediaPlayer;
-import android.os.Build;
-import android.os.CountDownTimer;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.util.SparseArray;
 import android.view.MotionEvent;
 import android.view.View;
 import android.graphics.Paint;
 import android.widget.ImageView;
 
 import androidx.annotation.Nullable;
-import androidx.annotation.RequiresApi;
 
+import com.example.chess.engine.Analysis;
+import com.example.chess.engine.AttackMap;
+import com.example.chess.engine.ChessClock;
+import com.example.chess.engine.EngineExecutor;
+import com.example.chess.engine.Fen;
+import com.example.chess.engine.Move;
+import com.example.chess.engine.MoveGenerator;
+import com.example.chess.engine.Position;
+import com.example.chess.engine.Search;
+import com.example.chess.engine.TranspositionTable;
+import com.example.chess.pgn.GameArchiveWriter;
+import com.example.chess.pgn.GameJournal;
+import com.example.chess.pgn.PgnGame;
+import com.example.chess.pgn.PgnWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.Locale;
 
 public class ChessView extends View {
+    private static final int SNAPSHOT_PLIES = 20; // moves logged between two snapshots
+    private static final int HINT_THREADS = 2; // at most, until SpeedupReport shows more help on a phone
+    private static GameJournal journal; // one per process, so a new view reads what the last one wrote
     private final float scale = .95f;
     private float originX, originY, squareSize, canvasWidth, canvasHeight;
     private final List<Integer> imgIds = Arrays.asList(
@@ -46,116 +69,172 @@ public class ChessView extends View {
             R.drawable.pawnblack,
             R.drawable.pawnwhite,
             R.drawable.kingwhitecheck,
-            R.drawable.kingblackcheck);
-    private HashMap<Integer, Bitmap> bitmaps;
+            R.drawable.kingblackcheck,
+            R.drawable.white_flag,
+            R.drawable.draw,
+            R.drawable.new_game_button);
+    private final SparseArray<Bitmap> bitmaps = new SparseArray<>(); // decoded once
+    private final SparseArray<Bitmap> pieceBitmaps = new SparseArray<>(); // scaled to the square size
+    private final RectF blackResignRect = new RectF(), blackDrawRect = new RectF(),
+            whiteResignRect = new RectF(), whiteDrawRect = new RectF(), newGameRect = new RectF();
+    private final float[] squareLefts = new float[8], squareTops = new float[8];
+    private final Rect blackClockRect = new Rect(), whiteClockRect = new Rect();
+    private Bitmap boardLayer; // background & squares, drawn once per size
+    private final Metrics metrics = new Metrics();
+    private int darkModeColor, whiteColor, blackColor, brownColor, brownMarkColor, lightColor, lightMarkColor;
     private Paint paint;
     private Board board;
+    private MoveGenerator moveGenerator;
+    private TranspositionTable positionCache;
+    private Search search;
+    private Player computerPlayer;
+    private Analysis analysis;
+    private EngineExecutor engine;
+    private EngineExecutor.Job<Integer> computerJob, hintJob;
     private int actualRow, actualColumn, finalRow, finalColumn;
     private boolean whiteTurn;
     private View.OnClickListener onClickListener;
-    private int enPassantRow, enPassantColumn;
-    private boolean enPassantMove;
-    private MediaPlayer moveMP, eatMP, checkMP, checkMateMP, startGameMP, castleMP;
+    private Sounds sounds;
+    private PgnGame record; // the moves of the game, saved when it ends
+    private boolean recorded;
+    private int snapshotPlies; // moves of the record in the last snapshot
     private boolean kingChecked, checkMate, restartGame;
-    private List<Integer> rowsCheckList, columnsCheckList;
-    private List<Piece> piecesChecking;
-    private List<Integer> rowsXRayList, columnsXRayList;
-    private boolean blackKingFirstMove, whiteKingFirstMove;
-    private boolean blackSortRookFirstMove, blackLongRookFirstMove, whiteSortRookFirstMove, whiteLongRookFirstMove;
-    private CountDownTimer timerBlack, timerWhite;
+    private boolean loading; // the saved game is being read
+    private ChessClock clock;
+    private final Runnable clockTick = this::tickClock;
     private String timeBlackStr, timeWhiteStr;
-    private long timeBlack, timeWhite;
-    private final long matchTime = 300999; //5 minutes
-    private boolean saveWhiteTime, saveBlackTime;
+    private long matchTime = 300000; //5 minutes
+    private long incrementTime;
+    private ChessClock.Mode clockMode = ChessClock.Mode.SUDDEN_DEATH;
     private List<Integer> rowsColoredSquares, columnsColoredSquares;
     private String endMessage, endReasonMessage;
     private boolean whiteDraw, blackDraw;
 
     public ChessView(Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
+        paint = new Paint();
+        loadBitmaps();
+        loadColors();
+    }
+
+    /**
+     * Computes the geometry of the board & buttons and scales the pieces, only when the size changes.
+     */
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        float boardSize = Math.min(width, height) * scale;
+        squareSize = boardSize / 8f;
+        originX = (width - boardSize) / 2f;
+        originY = (height - boardSize) / 2f;
+        canvasHeight = height;
+        canvasWidth = width;
+        for (int i = 0; i < 8; i++) {
+            squareLefts[i] = originX + squareSize * i;
+            squareTops[i] = originY + squareSize * i;
+        }
+        blackResignRect.set(originX, originY - squareSize * 2.8f, originX + squareSize / 1.75f, originY - squareSize * 2.3f);
+        blackDrawRect.set((originX + squareSize / 1.75f) + originX * 2, originY - squareSize * 2.8f, originX + squareSize * 1.56f, originY - squareSize * 2.3f);
+        whiteResignRect.set(canvasWidth - squareSize / 1.3f, canvasHeight - squareSize, canvasWidth - (squareSize / 6f), canvasHeight - squareSize / 2f);
+        whiteDrawRect.set(canvasWidth - squareSize * 1.77f, canvasHeight - squareSize, canvasWidth - squareSize * 1.2f, canvasHeight - squareSize / 2f);
+        newGameRect.set(originX + squareSize * 1.75f, canvasHeight - squareSize * 1.5f, originX + squareSize * 1.75f + squareSize * 4.55f, canvasHeight - squareSize / 2f);
+        paint.setTextSize((canvasHeight / canvasWidth) * squareSize / 2.8f);
+        paint.setTypeface(Typeface.SERIF);
+        int clockWidth = (int) Math.ceil(paint.measureText("[ 00:00.0 ]")) + 1, clockHeight = (int) Math.ceil(paint.getTextSize());
+        float blackX = canvasWidth - (2.2f * squareSize), blackY = originY / 3.2f;
+        float whiteX = originX, whiteY = canvasHeight - squareSize / 2;
+        blackClockRect.set((int) blackX, (int) blackY - clockHeight, (int) blackX + clockWidth, (int) blackY + clockHeight / 3);
+        whiteClockRect.set((int) whiteX, (int) whiteY - clockHeight, (int) whiteX + clockWidth, (int) whiteY + clockHeight / 3);
+        scalePieces();
+        drawBoardLayer(width, height);
+    }
+
+    /**
+     * Loads the sounds once, every game reuses them, starts the engine workers, reads the saved
+     * game the first time and resumes the clock ticks.
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (sounds == null)
+            sounds = new Sounds(getContext());
+        if (engine == null) {
+            engine = new EngineExecutor(2, this::post); // results come back on the UI thread
+            engine.setFailureCallback(e -> Log.e("ChessView", "Engine job failed", e));
+        }
+        if (board == null)
+            loadGame();
+        if (clock != null)
+            tickClock();
+    }
+
+    /**
+     * Frees the sounds & the engine workers, stops the clock ticks & saves the clocks as they are
+     * when the view goes away.
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(clockTick);
+        if (board != null && !checkMate)
+            snapshot();
+        if (engine != null) {
+            engine.shutdown();
+            engine = null;
+        }
+        if (sounds != null) {
+            sounds.release();
+            sounds = null;
+        }
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
-        if ((canvas != null && squareSize == 0f) || restartGame) { // init game
-            float boardSize = ((canvas.getWidth() <= canvas.getHeight()) ? canvas.getWidth() : canvas.getHeight()) * scale;
-            squareSize = boardSize / 8f;
-            originX = (canvas.getWidth() - boardSize) / 2f;
-            originY = (canvas.getHeight() - boardSize) / 2f;
-            canvasHeight = canvas.getHeight();
-            canvasWidth = canvas.getWidth();
-            initVariables();
+        metrics.start(Metrics.DRAW);
+        if (board == null) { // the saved game is still being read
+            canvas.drawBitmap(boardLayer, 0f, 0f, null);
+            metrics.stop(Metrics.DRAW);
+            return;
         }
-        paint.setColor(getResources().getColor(R.color.darkMode)); // on invalidate reDraw everything
-        canvas.drawPaint(paint);
-        initBoard(canvas);
+        if (restartGame)
+            initVariables(null);
+        canvas.drawBitmap(boardLayer, 0f, 0f, null); // background & squares in one copy
+        drawHighlights(canvas);
         initPieces(canvas);
         switchText(canvas);
         printTime(canvas);
         if (checkMate) {
             paint.setUnderlineText(true);
-            paint.setColor(getResources().getColor(R.color.white));
+            paint.setColor(whiteColor);
             paint.setTextSize((canvasHeight / canvasWidth) * squareSize / 3.4f);
             canvas.drawText(endMessage, originX + squareSize * 2.6f, originY / 1.7f, paint);
             paint.setTextSize((canvasHeight / canvasWidth) * squareSize / 6f);
             paint.setUnderlineText(false);
             canvas.drawText(endReasonMessage, originX + squareSize * 2.6f, originY / 1.3f, paint);
-            timerBlack.cancel();
-            timerWhite.cancel();
-            canvas.drawBitmap(BitmapFactory.decodeResource(getResources(), R.drawable.new_game_button),
-                    null,
-                    new RectF(
-                            originX + squareSize * 1.75f,
-                            canvasHeight - squareSize * 1.5f,
-                            originX + squareSize * 1.75f + squareSize * 4.55f,
-                            canvasHeight - squareSize / 2f
-                    ),
-                    paint);
+            clock.stop();
+            if (!recorded)
+                saveGame();
+            removeCallbacks(clockTick);
+            canvas.drawBitmap(bitmaps.get(R.drawable.new_game_button), null, newGameRect, paint);
         } else {
             printButtons(canvas);
         }
+        metrics.stop(Metrics.DRAW);
+        if (metrics.isEnabled()) {
+            paint.setColor(whiteColor);
+            paint.setTextSize(squareSize / 5f);
+            metrics.drawOverlay(canvas, paint, originX, originY - squareSize * 1.8f);
+        }
     }
 
     /**
      * Prints the resign & draw buttons.
      */
     private void printButtons(Canvas canvas) {
-        canvas.drawBitmap(BitmapFactory.decodeResource(getResources(), R.drawable.white_flag),
-                null,
-                new RectF(
-                        originX,
-                        originY - squareSize * 2.8f,
-                        originX + squareSize / 1.75f,
-                        originY - squareSize * 2.3f
-                ),
-                paint);
-        canvas.drawBitmap(BitmapFactory.decodeResource(getResources(), R.drawable.white_flag),
-                null,
-                new RectF(
-                        canvasWidth - squareSize / 1.3f,
-                        canvasHeight - squareSize,
-                        canvasWidth - (squareSize / 6f),
-                        canvasHeight - squareSize / 2f
-                ),
-                paint);
-        canvas.drawBitmap(BitmapFactory.decodeResource(getResources(), R.drawable.draw),
-                null,
-                new RectF(
-                        (originX + squareSize / 1.75f) + originX * 2,
-                        originY - squareSize * 2.8f,
-                        originX + squareSize * 1.56f,
-                        originY - squareSize * 2.3f
-                ),
-                paint);
-        canvas.drawBitmap(BitmapFactory.decodeResource(getResources(), R.drawable.draw),
-                null,
-                new RectF(
-                        canvasWidth - squareSize * 1.77f,
-                        canvasHeight - squareSize,
-                        canvasWidth - squareSize * 1.2f,
-                        canvasHeight - squareSize / 2f
-                ),
-                paint);
+        canvas.drawBitmap(bitmaps.get(R.drawable.white_flag), null, blackResignRect, paint);
+        canvas.drawBitmap(bitmaps.get(R.drawable.white_flag), null, whiteResignRect, paint);
+        canvas.drawBitmap(bitmaps.get(R.drawable.draw), null, blackDrawRect, paint);
+        canvas.drawBitmap(bitmaps.get(R.drawable.draw), null, whiteDrawRect, paint);
     }
 
     /**
@@ -165,53 +244,58 @@ public class ChessView extends View {
         if (!checkMate) {
             paint.setTextSize((canvasHeight / canvasWidth) * squareSize / 2.8f);
             paint.setUnderlineText(false);
-            paint.setColor(getResources().getColor(R.color.white));
+            paint.setColor(whiteColor);
             if (!"".equals(timeBlackStr)) {
                 ;
                 canvas.drawText(timeBlackStr, canvasWidth - (2.2f * squareSize), originY / 3.2f, paint);
-                timeBlackStr = "";
             }
             if (!"".equals(timeWhiteStr)) {
                 canvas.drawText(timeWhiteStr, originX, canvasHeight - squareSize / 2, paint);
-                timeWhiteStr = "";
             }
         }
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        if (board == null)
+            return true; // no game until the saved one is read
         if (MotionEvent.ACTION_DOWN == event.getAction()) {
             actualRow = (int) (((event.getY() - originY) / squareSize) + 1);
             actualColumn = (int) (((event.getX() - originX) / squareSize) + 1);
         }
         if (MotionEvent.ACTION_UP == event.getAction()) {
             if (!checkMate) {
-                if (event.getX() >= originX && event.getX() <= (originX + squareSize / 1.75f) && event.getY() >= (originY - squareSize * 2.8f) && event.getY() <= (originY - squareSize * 2.3f)) {
+                if (blackResignRect.contains(event.getX(), event.getY())) {
                     checkMate = true;
                     endMessage = "White Wins!";
                     endReasonMessage = "black resigns";
-                } else if (event.getX() >= ((originX + squareSize / 1.75f) + originX * 2) && event.getX() <= (originX + squareSize * 1.56f) && event.getY() >= (originY - squareSize * 2.8f) && event.getY() <= (originY - squareSize * 2.3f)) {
+                    record.setTermination(PgnGame.Termination.RESIGNATION);
+                } else if (blackDrawRect.contains(event.getX(), event.getY())) {
                     blackDraw = true;
-                } else if (event.getX() >= (canvasWidth - squareSize / 1.3f) && event.getX() <= canvasWidth - (squareSize / 6f) && event.getY() >= (canvasHeight - squareSize) && event.getY() <= (canvasHeight - squareSize / 2f)) {
+                } else if (whiteResignRect.contains(event.getX(), event.getY())) {
                     checkMate = true;
                     endMessage = "Black Wins!";
                     endReasonMessage = "white resigns";
-                } else if (event.getX() >= (canvasWidth - squareSize * 1.77f) && event.getX() <= (canvasWidth - squareSize * 1.2f) && event.getY() >= (canvasHeight - squareSize) && event.getY() <= (canvasHeight - squareSize / 2f)) {
+                    record.setTermination(PgnGame.Termination.RESIGNATION);
+                } else if (whiteDrawRect.contains(event.getX(), event.getY())) {
                     whiteDraw = true;
                 }
                 if (blackDraw && whiteDraw) {
                     checkMate = true;
                     endMessage = "Draw";
                     endReasonMessage = "by agreement";
+                    record.setTermination(PgnGame.Termination.AGREEMENT);
                 }
             }
             finalRow = (int) (((event.getY() - originY) / squareSize) + 1);
             finalColumn = (int) (((event.getX() - originX) / squareSize) + 1);
-            if (actualRow != finalRow || actualColumn != finalColumn)
+            if (actualRow != finalRow || actualColumn != finalColumn) {
+                metrics.start(Metrics.MOVE_PIECE);
                 movePiece(actualRow, actualColumn, finalRow, finalColumn);
+                metrics.stop(Metrics.MOVE_PIECE);
+            }
             if (checkMate) {
-                if (event.getX() >= (originX + squareSize * 1.75f) && event.getX() <= (originX + squareSize * 1.75f + squareSize * 4.55f) && event.getY() >= (canvasHeight - squareSize * 1.5f) && event.getY() <= (canvasHeight - squareSize / 2f)) {
+                if (newGameRect.contains(event.getX(), event.getY())) {
                     restartGame = true;
                     ChessView chessView = (ChessView) findViewById(R.id.chess_view);
                     chessView.invalidate();
@@ -222,27 +306,20 @@ public class ChessView extends View {
     }
 
     /**
-     * Initialize the variables to the default values to start the game.
+     * Initialize the variables to the default values to start the game, or to go on with the
+     * saved one if not null.
      */
-    private void initVariables() {
-        bitmaps = new HashMap<>();
-        paint = new Paint();
-        loadBitmaps();
-        board = new Board();
-        whiteTurn = true;
-        piecesChecking = new ArrayList<>();
-        moveMP = MediaPlayer.create(this.getContext(), R.raw.move_sound);
-        eatMP = MediaPlayer.create(this.getContext(), R.raw.eat_sound);
-        checkMP = MediaPlayer.create(this.getContext(), R.raw.check_sound);
-        checkMateMP = MediaPlayer.create(this.getContext(), R.raw.check_mate_sound);
-        startGameMP = MediaPlayer.create(this.getContext(), R.raw.start_game);
-        castleMP = MediaPlayer.create(this.getContext(), R.raw.castle_sound);
-        blackKingFirstMove = true;
-        whiteKingFirstMove = true;
-        whiteSortRookFirstMove = true;
-        whiteLongRookFirstMove = true;
-        blackSortRookFirstMove = true;
-        blackLongRookFirstMove = true;
+    private void initVariables(GameJournal.Saved saved) {
+        board = saved == null ? new Board() : new Board(Fen.toString(saved.getPosition(), saved.getFullmove()));
+        whiteTurn = board.getPosition().getSideToMove().equals(Player.WHITE);
+        moveGenerator = new MoveGenerator();
+        if (positionCache == null) // verdicts stay true from one game to the next
+            positionCache = new TranspositionTable(1);
+        if (search == null)
+            search = new Search(new TranspositionTable(16));
+        if (analysis == null)
+            analysis = new Analysis(Math.min(HINT_THREADS, Runtime.getRuntime().availableProcessors()), 16);
+        engine.cancelAll(); // the last game's searches are useless
         kingChecked = false;
         checkMate = false;
         restartGame = false;
@@ -250,796 +327,290 @@ public class ChessView extends View {
         columnsColoredSquares = new ArrayList<>();
         endMessage = "";
         endReasonMessage = "";
+        if (saved == null) {
+            record = new PgnGame();
+            record.setTag("Event", "Casual game");
+            record.setTag("Site", "Android Chess");
+            record.setTag("Date", new SimpleDateFormat("yyyy.MM.dd", Locale.ROOT).format(new Date()));
+            record.setTag("Round", "-");
+            record.setTag("White", "?");
+            record.setTag("Black", "?");
+            record.setResult(PgnGame.UNKNOWN);
+        } else {
+            record = saved.getRecord();
+            matchTime = saved.getBaseMillis();
+            incrementTime = saved.getIncrementMillis();
+            clockMode = saved.getMode();
+        }
+        recorded = false;
         whiteDraw = false;
         blackDraw = false;
-        timeWhite = matchTime;
-        timeBlack = matchTime;
         timeBlackStr = "";
         timeWhiteStr = "";
-        initWhiteTimer(matchTime);
-        initBlackTimer(matchTime);
-        startGameMP.start();
-    }
-
-    /**
-     * Initialize black's timer.
-     */
-    private void initBlackTimer(long time) {
-        timeBlackStr = "";
-        if (timerBlack != null) { // to prevent ending game if timer ends
-            timerBlack.cancel();
-            timerBlack = null;
-        }
-        timerBlack = new CountDownTimer(time, 1000) {
-            @Override
-            public void onTick(long millisUntilFinished) {
-                if (saveBlackTime) {
-                    timeBlack = millisUntilFinished + 500;
-                    saveBlackTime = false;
-                }
-                long actualTime;
-                if (!whiteTurn) // if this turn, prints countdown, if not, prints time he moved on
-                    actualTime = millisUntilFinished;
-                else
-                    actualTime = timeBlack;
-                int minutes = (int) Math.floor(actualTime / 60000);
-                int seconds = (int) (actualTime / 1000) % 60;
-                timeBlackStr = "[ " + minutes + ":";
-                timeBlackStr += ((seconds < 10) ? ("0" + seconds) : seconds) + " ]";
-            }
-
-            @Override
-            public void onFinish() {
-                if (!whiteTurn) {
-                    checkMate = true;
-                    endMessage = "White Wins!";
-                    endReasonMessage = "by black's timeout";
-                    ChessView chessView = (ChessView) findViewById(R.id.chess_view);
-                    chessView.invalidate();
-                }
-            }
-        };
-        timerBlack.start();
-    }
-
-    /**
-     * Initialize white's timer.
-     */
-    private void initWhiteTimer(long time) {
-        timeWhiteStr = "";
-        if (timerWhite != null) {
-            timerWhite.cancel();
-            timerWhite = null;
-        }
-        timerWhite = new CountDownTimer(time, 1000) {
-            @Override
-            public void onTick(long millisUntilFinished) {
-                if (saveWhiteTime) {
-                    timeWhite = millisUntilFinished + 500;
-                    saveWhiteTime = false;
-                }
-                long actualTime;
-                if (whiteTurn)
-                    actualTime = millisUntilFinished;
-                else
-                    actualTime = timeWhite;
-                int minutes = (int) Math.floor(actualTime / 60000);
-                int seconds = (int) (actualTime / 1000) % 60;
-                timeWhiteStr = "[ " + minutes + ":";
-                timeWhiteStr += ((seconds < 10) ? ("0" + seconds) : seconds) + " ]";
-                ChessView chessView = (ChessView) findViewById(R.id.chess_view);
-                chessView.invalidate();
-            }
-
-            @Override
-            public void onFinish() {
-                if (whiteTurn) {
-                    checkMate = true;
-                    endMessage = "Black Wins!";
-                    endReasonMessage = "by white's timeout";
-                    ChessView chessView = (ChessView) findViewById(R.id.chess_view);
-                    chessView.invalidate();
-                }
-            }
-        };
-        timerWhite.start();
+        removeCallbacks(clockTick);
+        clock = new ChessClock(matchTime, incrementTime, clockMode, SystemClock::elapsedRealtimeNanos);
+        if (saved != null)
+            clock.restore(saved.getWhiteNanos(), saved.getBlackNanos());
+        clock.start(board.getPosition().getSideToMove());
+        snapshot(); // over the last game's
+        tickClock();
+        if (saved == null)
+            sounds.play(Sounds.START_GAME);
+        else
+            kingCheck();
+        computerTurn();
     }
 
     /**
-     * Load the HashMap of bitmaps to draw.
+     * Reads the game the process or the last view was playing on the thread of the journal, then
+     * goes on with it, or with a new game if there is none, and redraws.
      */
-    private void loadBitmaps() {
-        for (Integer id : imgIds) {
-            bitmaps.put(id, BitmapFactory.decodeResource(getResources(), id));
-        }
+    private void loadGame() {
+        if (loading)
+            return;
+        loading = true;
+        journal().load(saved -> post(() -> {
+            loading = false;
+            if (board != null || !isAttachedToWindow())
+                return; // the next attach reads it again
+            initVariables(saved);
+            invalidate();
+        }));
     }
 
     /**
-     * Print the squares of the board.
+     * Saves the position, record & clocks as they are, so a relaunch goes on from here.
      */
-    private void initBoard(Canvas canvas) {
-        for (int i = 0; i < 8; i++) {
-            for (int k = i, j = 0; k < i + 8; k++, j++) {
-                if (k % 2 == 0) {
-                    if (columnsColoredSquares.size() > 0 && rowsColoredSquares.size() > 0 && ((j == columnsColoredSquares.get(0) - 1 && i == rowsColoredSquares.get(0) - 1) || (j == columnsColoredSquares.get(1) - 1 && i == rowsColoredSquares.get(1) - 1))) {
-                        paint.setColor(getResources().getColor(R.color.brownMark));
-                    } else {
-                        paint.setColor(getResources().getColor(R.color.brown));
-                    }
-                } else {
-                    if (columnsColoredSquares.size() > 0 && rowsColoredSquares.size() > 0 && ((j == columnsColoredSquares.get(0) - 1 && i == rowsColoredSquares.get(0) - 1) || (j == columnsColoredSquares.get(1) - 1 && i == rowsColoredSquares.get(1) - 1))) {
-                        paint.setColor(getResources().getColor(R.color.lightMark));
-                    } else {
-                        paint.setColor(getResources().getColor(R.color.light));
-                    }
-                }
-                canvas.drawRect(
-                        originX + squareSize * j,
-                        originY + i * squareSize,
-                        originX + squareSize * (j + 1),
-                        originY + (i + 1) * squareSize,
-                        paint);
-            }
-        }
+    private void snapshot() {
+        snapshotPlies = record.size();
+        journal().snapshot(record, board.getPosition(), clock.remainingNanos(Player.WHITE), clock.remainingNanos(Player.BLACK),
+                matchTime, incrementTime, clockMode);
     }
 
     /**
-     * Print all the pieces in his square on the board.
+     * Logs the last move, or its crowning once the player picks it, with the clocks after it.
      */
-    private void initPieces(Canvas canvas) {
-        for (Piece p : board.getPieceList()) {
-            if (p != null)
-                canvas.drawBitmap(bitmaps.get(p.getResID()),
-                        null,
-                        new RectF(
-                                originX + squareSize * (p.getColumn() - 1),
-                                originY + squareSize * (p.getRow() - 1),
-                                originX + squareSize * (p.getColumn()),
-                                originY + squareSize * (p.getRow())
-                        ),
-                        paint);
-        }
+    private void logMove() {
+        journal().append(record.size() - 1, record.getMove(record.size() - 1),
+                clock.remainingNanos(Player.WHITE), clock.remainingNanos(Player.BLACK));
     }
 
-    /**
-     * Switch the text between turns.
-     */
-    private void switchText(Canvas canvas) {
-        if (!checkMate) {
-            paint.setTextSize((canvasHeight / canvasWidth) * squareSize / 3.4f);
-            paint.setTypeface(Typeface.SERIF);
-            paint.setUnderlineText(false);
-            if (whiteTurn) {
-                paint.setColor(getResources().getColor(R.color.white));
-                canvas.drawText("White's Turn", originX + squareSize * 2.6f, canvasHeight - squareSize * 1.2f, paint);
-            } else {
-                paint.setColor(getResources().getColor(R.color.black));
-                canvas.drawText("Black's Turn", originX + squareSize * 2.6f, originY / 1.4f, paint);
-            }
+    private GameJournal journal() {
+        if (journal == null) {
+            journal = new GameJournal(getContext().getFilesDir());
+            journal.setFailureCallback(e -> Log.e("ChessView", "Can't autosave the game", e));
         }
+        return journal;
     }
 
     /**
-     * Action of moving the piece.
+     * Shows the time of both players and schedules the next tick for when the running clock
+     * shows another value, ending the game when a flag falls.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private void movePiece(int actualRow, int actualColumn, int finalRow, int finalColumn) {
+    private void tickClock() {
         if (checkMate)
             return;
-
-        if (finalRow < 1 || finalRow > 8 || finalColumn < 1 || finalColumn > 8) //if goes out of the board
+        showTime(Player.WHITE);
+        showTime(Player.BLACK);
+        Player player = clock.getRunning();
+        if (player == null)
             return;
-
-        Piece actualPiece = null, otherPiece = null;
-        for (Piece p : board.getPieceList()) {
-            if (p.getColumn() == finalColumn && p.getRow() == finalRow) { // search piece when first touch
-                otherPiece = p;
-            }
-            if (p.getColumn() == actualColumn && p.getRow() == actualRow) { // search piece when raise
-                actualPiece = p;
-            }
-        }
-        if (actualPiece == null) { //if didn't touch a piece
+        if (clock.isFlagged(player)) {
+            checkMate = true;
+            endMessage = player.equals(Player.WHITE) ? "Black Wins!" : "White Wins!";
+            endReasonMessage = player.equals(Player.WHITE) ? "by white's timeout" : "by black's timeout";
+            record.setTermination(PgnGame.Termination.TIMEOUT);
+            invalidate();
             return;
         }
-
-        if (!kingChecked) { // if trying to move a piece on xRay of its king, can`t move
-            Piece king = null;
-            for (Piece p : board.getPieceList()) {
-                if (p.getPlayer().equals(actualPiece.getPlayer()) && p.getModel().equals(PieceModel.KING)) {
-                    king = p;
-                    break;
-                }
-            }
-            if (king != null) {
-                for (Piece p : board.getPieceList()) {
-                    if (!p.getPlayer().equals(king.getPlayer())) {
-                        if (xRay(p, king)) {
-                            if (actualPieceAloneOnXRay(p, king, actualPiece)) {
-                                if (moveRules(actualPiece, actualRow, actualColumn, finalRow, finalColumn, otherPiece, false))
-                                    moveOnXRay(p, actualPiece, finalColumn, finalRow);
-                                return;
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        if (kingChecked) { // king check rules
-            if ((actualPiece.getPlayer().equals(Player.WHITE) && whiteTurn) || (actualPiece.getPlayer().equals(Player.BLACK) && !whiteTurn)) {
-                Piece pieceChecking = null, king = null;
-                for (Piece p : board.getPieceList()) {
-                    if (p.getModel().equals(PieceModel.KING) && p.getPlayer().equals(whiteTurn ? Player.WHITE : Player.BLACK)) {
-                        king = p;
-                    }
-                }
-                for (Piece p : board.getPieceList()) {
-                    if (!p.getPlayer().equals(king.getPlayer()) && (moveRules(p, p.getRow(), p.getColumn(), king.getRow(), king.getColumn(), king, false))) {
-                        pieceChecking = p;
-                    }
-                }
-                if (otherPiece == null && piecesChecking.size() == 1) {
-                    if (!actualPiece.getModel().equals(PieceModel.KING)) {
-                        if (rowsCheckList != null && rowsCheckList.size() > 0 && columnsCheckList != null && columnsCheckList.size() > 0) { //if putting a piece in diagonal of the check
-                            for (int i = 0; i < rowsCheckList.size(); i++) {
-                                if (rowsCheckList.get(i) == finalRow && columnsCheckList.get(i) == finalColumn) {
-                                    if (moveRules(actualPiece, actualRow, actualColumn, finalRow, finalColumn, otherPiece, true)) {
-                                        endTurn(actualPiece, finalColumn, finalRow, false);
-                                        return;
-                                    }
-                                }
-                            }
-                        } else if (rowsCheckList != null && rowsCheckList.size() > 0) { //if putting a piece in front of the check
-                            for (int i = 0; i < rowsCheckList.size(); i++) {
-                                if (rowsCheckList.get(i) == finalRow && finalColumn == pieceChecking.getColumn()) {
-                                    if (moveRules(actualPiece, actualRow, actualColumn, finalRow, finalColumn, otherPiece, true)) {
-                                        endTurn(actualPiece, finalColumn, finalRow, false);
-                                        return;
-                                    }
-                                }
-                            }
-                        } else if (columnsCheckList != null && columnsCheckList.size() > 0) { //if putting a piece in lateral of the check
-                            for (int i = 0; i < columnsCheckList.size(); i++) {
-                                if (columnsCheckList.get(i) == finalColumn && finalRow == pieceChecking.getRow()) {
-                                    if (moveRules(actualPiece, actualRow, actualColumn, finalRow, finalColumn, otherPiece, true)) {
-                                        endTurn(actualPiece, finalColumn, finalRow, false);
-                                        return;
-                                    }
-                                }
-                            }
-                        }
-                    } else { //if moving the king from the check
-                        if (moveRules(actualPiece, actualRow, actualColumn, finalRow, finalColumn, otherPiece, true)) {
-                            endTurn(actualPiece, finalColumn, finalRow, false);
-                            return;
-                        }
-                    }
-                } else if (otherPiece != null && !otherPiece.getModel().equals(PieceModel.KING)) {
-                    if (otherPiece.getPlayer().equals(actualPiece.getPlayer())) { //blocks with his own pieces
-                        return;
-                    } else if (!otherPiece.getPlayer().equals(actualPiece.getPlayer())) { //eats the checkingPiece
-                        if (piecesChecking.size() == 1) {
-                            if (pieceChecking.equals(otherPiece) && moveRules(actualPiece, actualRow, actualColumn, finalRow, finalColumn, otherPiece, true)) {
-                                board.getPieceList().remove(otherPiece);
-                                endTurn(actualPiece, finalColumn, finalRow, true);
-                                return;
-                            }
-                        } else if (piecesChecking.size() == 2) { // if double check, only the king can move or move and eat
-                            if (actualPiece.getModel().equals(PieceModel.KING)) {
-                                if (moveRules(actualPiece, actualRow, actualColumn, finalRow, finalColumn, otherPiece, true)) {
-                                    if (otherPiece != null) {
-                                        board.getPieceList().remove(otherPiece);
-                                        endTurn(actualPiece, finalColumn, finalRow, true);
-                                    } else {
-                                        endTurn(actualPiece, finalColumn, finalRow, false);
-                                    }
-                                    return;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        } else if ((actualPiece.getPlayer().equals(Player.WHITE) && whiteTurn) || (actualPiece.getPlayer().equals(Player.BLACK) && !whiteTurn)) { // normal rules
-            if (otherPiece == null) { //can move
-                if (moveRules(actualPiece, actualRow, actualColumn, finalRow, finalColumn, otherPiece, true)) {
-                    endTurn(actualPiece, finalColumn, finalRow, false);
-                    return;
-                }
-            } else if (otherPiece != null && !otherPiece.getModel().equals(PieceModel.KING)) {
-                if (otherPiece.getPlayer().equals(actualPiece.getPlayer())) { //blocks with his own pieces
-                    return;
-                } else if (!otherPiece.getPlayer().equals(actualPiece.getPlayer())) { //eats and move
-                    if (moveRules(actualPiece, actualRow, actualColumn, finalRow, finalColumn, otherPiece, true)) {
-                        board.getPieceList().remove(otherPiece);
-                        endTurn(actualPiece, finalColumn, finalRow, true);
-                        return;
-                    }
-                }
-            }
-        }
+        long nanos = clock.nanosToNextChange(player);
+        postDelayed(clockTick, (nanos + 999999) / 1000000); // the first millisecond showing the new value
     }
 
     /**
-     * Returns if the piece can be in finalRow and finalColumn or in the otherPiece square.
+     * Updates the text of the player's clock, redrawing only its rectangle & only if it changed.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private boolean moveRules(Piece piece, int actualRow, int actualColumn, int finalRow, int finalColumn, Piece otherPiece, boolean move) {
-        switch (piece.getModel()) {
-            case PAWN:
-                Boolean p = pawnMovement(piece, actualRow, actualColumn, finalRow, finalColumn, otherPiece, move);
-                if (p != null) return p;
-                break;
-            case ROOK:
-                Boolean r = rookMovement(piece, actualRow, actualColumn, finalRow, finalColumn);
-                if (r != null) return r;
-                break;
-            case KNIGHT:
-                Boolean kn = knightMovement(piece, actualRow, actualColumn, finalRow, finalColumn);
-                if (kn != null) return kn;
-                break;
-            case BISHOP:
-                Boolean b = bishopMovement(piece, actualRow, actualColumn, finalRow, finalColumn);
-                if (b != null) return b;
-                break;
-            case QUEEN:
-                Boolean q = queenMovement(piece, actualRow, actualColumn, finalRow, finalColumn);
-                if (q != null) return q;
-                break;
-            case KING:
-                Boolean k = kingMovement(piece, actualRow, actualColumn, finalRow, finalColumn, otherPiece, move);
-                if (k != null) return k;
-                break;
+    private void showTime(Player player) {
+        String time = ChessClock.format(clock.remainingNanos(player));
+        if (player.equals(Player.WHITE) && !time.equals(timeWhiteStr)) {
+            timeWhiteStr = time;
+            invalidate(whiteClockRect);
+        } else if (player.equals(Player.BLACK) && !time.equals(timeBlackStr)) {
+            timeBlackStr = time;
+            invalidate(blackClockRect);
         }
-        return false;
     }
 
     /**
-     * Special rules for pawns.
+     * Decodes the bitmaps to draw, once for the whole life of the view.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private Boolean pawnMovement(Piece piece, int actualRow, int actualColumn, int finalRow, int finalColumn, Piece otherPiece, boolean move) {
-        if (!checkPieceInFront(piece, actualRow, actualColumn, finalRow, finalColumn)) {
-            if (actualColumn == finalColumn) {//if moving forward
-                if (otherPiece != null && otherPiece.getModel().equals(PieceModel.KING))
-                    return false;
-                int maxMove = 1;
-                if (checkPawnFirstMove(piece)) {
-                    maxMove = 2;
-                }
-                if (piece.getPlayer().equals(Player.WHITE)) {
-                    if (actualRow - finalRow <= maxMove && actualRow - finalRow > 0) { //if moves 1 or 2
-                        if (finalRow == 1) {
-                            coronationMenu(piece);
-                        }
-                        if (maxMove == 2) { // next turn, can be captured by enPassant rule
-                            enPassantRow = finalRow + 1;
-                            enPassantColumn = finalColumn;
-                            enPassantMove = true;
-                        }
-                        return true;
-                    }
-                } else if (piece.getPlayer().equals(Player.BLACK)) {
-                    if (finalRow - actualRow <= maxMove && finalRow - actualRow > 0) { //if moves 1 or 2
-                        if (finalRow == 8) {
-                            coronationMenu(piece);
-                        }
-                        if (maxMove == 2) { // next turn, can be captured by enPassant rule
-                            enPassantRow = finalRow - 1;
-                            enPassantColumn = finalColumn;
-                            enPassantMove = true;
-                        }
-                        return true;
-                    }
-                }
-            } else if (actualColumn + 1 == finalColumn || actualColumn - 1 == finalColumn) { //if trying to eat
-                if (piece.getPlayer().equals(Player.WHITE) ? actualRow - finalRow == 1 : finalRow - actualRow == 1) {
-                    if (otherPiece != null && otherPiece.getModel().equals(PieceModel.KING)) {
-                        return false;
-                    } else if (otherPiece != null) { // if there is a piece to eat
-                        if (piece.getPlayer().equals(Player.WHITE) ? finalRow == 1 : finalRow == 8) {
-                            coronationMenu(piece);
-                        }
-                        if (move) {
-                            board.getPieceList().remove(otherPiece);
-                            endTurn(piece, finalColumn, finalRow, true);
-                        }
-                        return false;
-                    } else if (finalColumn == enPassantColumn && finalRow == enPassantRow) { // if last turn a pawn went enPassant
-                        if (move) {
-                            Piece delete = null;
-                            for (Piece p : board.getPieceList()) {
-                                if (!p.getPlayer().equals(piece.getPlayer()))
-                                    if (p.getRow() == (piece.getPlayer().equals(Player.WHITE) ? enPassantRow + 1 : enPassantRow - 1) && p.getColumn() == enPassantColumn)
-                                        delete = p;
-                            }
-                            if (delete != null)
-                                board.getPieceList().remove(delete);
-                            endTurn(piece, finalColumn, finalRow, delete != null);
-                        }
-                        return false;
-                    }
-                }
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Rules for rook.
-     */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private Boolean rookMovement(Piece piece, int actualRow, int actualColumn, int finalRow, int finalColumn) {
-        if (!checkPieceInFront(piece, actualRow, actualColumn, finalRow, finalColumn) && !checkPieceInLateral(piece, actualRow, actualColumn, finalRow, finalColumn)) {
-            if (actualColumn == finalColumn || actualRow == finalRow) {
-                if (piece.getPlayer().equals(Player.WHITE)) { // rules for castle
-                    if (piece.getColumn() == 1)
-                        whiteLongRookFirstMove = false;
-                    else if (piece.getColumn() == 8)
-                        whiteSortRookFirstMove = false;
-                } else {
-                    if (piece.getColumn() == 1)
-                        blackLongRookFirstMove = false;
-                    else if (piece.getColumn() == 8)
-                        blackSortRookFirstMove = false;
-                }
-                return true;
-            } else
-                return false;
+    private void loadBitmaps() {
+        for (Integer id : imgIds) {
+            bitmaps.put(id, BitmapFactory.decodeResource(getResources(), id));
         }
-        return null;
     }
 
     /**
-     * Rules for knight.
+     * Scales the pieces to the square size so drawing them doesn't scale them every frame.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private Boolean knightMovement(Piece piece, int actualRow, int actualColumn, int finalRow, int finalColumn) {
-        if (Math.abs(finalColumn - actualColumn) == 2 && Math.abs(finalRow - actualRow) == 1 || Math.abs(finalColumn - actualColumn) == 1 && Math.abs(finalRow - actualRow) == 2)
-            return true;
-        else
-            return false;
-    }
-
-    /**
-     * Rules for bishop.
-     */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private Boolean bishopMovement(Piece piece, int actualRow, int actualColumn, int finalRow, int finalColumn) {
-        if (!checkPieceInDiagonal(piece, actualRow, actualColumn, finalRow, finalColumn)) {
-            if (Math.abs(finalColumn - actualColumn) == Math.abs(finalRow - actualRow))
-                return true;
-            else
-                return false;
+    private void scalePieces() {
+        int size = Math.max(1, Math.round(squareSize));
+        for (int i = 0; i < pieceBitmaps.size(); i++) {
+            Bitmap scaled = pieceBitmaps.valueAt(i);
+            if (scaled != bitmaps.get(pieceBitmaps.keyAt(i)))
+                scaled.recycle();
+        }
+        pieceBitmaps.clear();
+        for (Integer id : imgIds) {
+            if (id != R.drawable.white_flag && id != R.drawable.draw && id != R.drawable.new_game_button)
+                pieceBitmaps.put(id, Bitmap.createScaledBitmap(bitmaps.get(id), size, size, true));
         }
-        return null;
     }
 
     /**
-     * Rules for queen.
+     * Reads the colors once instead of on every square of every frame.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private Boolean queenMovement(Piece piece, int actualRow, int actualColumn, int finalRow, int finalColumn) {
-        if (!checkPieceInFront(piece, actualRow, actualColumn, finalRow, finalColumn) && !checkPieceInLateral(piece, actualRow, actualColumn, finalRow, finalColumn) && !checkPieceInDiagonal(piece, actualRow, actualColumn, finalRow, finalColumn)) {
-            if (actualColumn == finalColumn || actualRow == finalRow)
-                return true;
-            else if (Math.abs(finalColumn - actualColumn) == Math.abs(finalRow - actualRow))
-                return true;
-            else
-                return false;
-        }
-        return null;
+    private void loadColors() {
+        darkModeColor = getResources().getColor(R.color.darkMode);
+        whiteColor = getResources().getColor(R.color.white);
+        blackColor = getResources().getColor(R.color.black);
+        brownColor = getResources().getColor(R.color.brown);
+        brownMarkColor = getResources().getColor(R.color.brownMark);
+        lightColor = getResources().getColor(R.color.light);
+        lightMarkColor = getResources().getColor(R.color.lightMark);
     }
 
     /**
-     * Special rules for king.
+     * Draws the background & the squares of the board into the layer every frame starts from.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private Boolean kingMovement(Piece piece, int actualRow, int actualColumn, int finalRow, int finalColumn, Piece otherPiece, boolean move) {
-        if (otherPiece != null && otherPiece.getPlayer().equals(piece.getPlayer()))
-            return false;
-        if (move) {
-            kingCastle(piece, finalRow, finalColumn);
-        }
-        if ((Math.abs(finalColumn - actualColumn) == 0 || Math.abs(finalColumn - actualColumn) == 1) && (Math.abs(finalRow - actualRow) == 0 || Math.abs(finalRow - actualRow) == 1)) {
-            if (otherPiece != null && !otherPiece.getModel().equals(PieceModel.KING)) {
-                if (!piece.getPlayer().equals(otherPiece.getPlayer())) { //if trying to eat a defended piece, don`t
-                    for (Piece p : board.getPieceList()) {
-                        if (p.getPlayer().equals(otherPiece.getPlayer()) && !p.equals(otherPiece)) {
-                            if (moveRules(p, p.getRow(), p.getColumn(), otherPiece.getRow(), otherPiece.getColumn(), otherPiece, false)) {
-                                return false;
-                            }
-                        }
-                    }
-                }
-                if (move) { // if not looking for checks
-                    if (piece.getPlayer().equals(Player.WHITE)) // castle rules
-                        whiteKingFirstMove = false;
-                    else
-                        blackKingFirstMove = false;
-                    board.getPieceList().remove(otherPiece);
-                    endTurn(piece, finalColumn, finalRow, true);
-                    return false;
-                } else
-                    return true;
-            }
-            if (otherPiece == null) { //if it's a free square but is defended, can`t move
-                for (Piece p : board.getPieceList()) {
-                    if (!p.getPlayer().equals(piece.getPlayer())) {
-                        if (moveRules(p, p.getRow(), p.getColumn(), finalRow, finalColumn, piece, false)) {
-                            return false;
-                        }
-                    }
-                }
-                if (move) {
-                    endTurn(piece, finalColumn, finalRow, false);
-                    if (piece.getPlayer().equals(Player.WHITE)) // castle rules
-                        whiteKingFirstMove = false;
-                    else
-                        blackKingFirstMove = false;
-                    return false;
-                }
-                return true;
+    private void drawBoardLayer(int width, int height) {
+        if (boardLayer != null)
+            boardLayer.recycle();
+        boardLayer = Bitmap.createBitmap(Math.max(1, width), Math.max(1, height), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(boardLayer);
+        paint.setColor(darkModeColor);
+        canvas.drawPaint(paint);
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                paint.setColor((i + j) % 2 == 0 ? brownColor : lightColor);
+                canvas.drawRect(squareLefts[j], squareTops[i], squareLefts[j] + squareSize, squareTops[i] + squareSize, paint);
             }
         }
-        return false;
     }
 
     /**
-     * Checks if there are any piece in front.
+     * Print the marked squares of the last move or the hint over the board layer.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private boolean checkPieceInFront(Piece piece, int actualRow, int actualColumn, int finalRow, int finalColumn) {
-        boolean eats = false, defending = false;
-        if (finalColumn == actualColumn) { // if moving in front
-            List<Integer> rows;
-            if (actualRow >= finalRow) { //if moving backwards the order should be reversed
-                rows = IntStream.rangeClosed(finalRow, actualRow).boxed().collect(Collectors.toList());
-                Collections.reverse(rows);
-            } else
-                rows = IntStream.rangeClosed(actualRow, finalRow).boxed().collect(Collectors.toList()); //if moving forward list order is OK
-            for (Piece p : board.getPieceList()) {
-                if (!piece.getPlayer().equals(p.getPlayer()) && finalColumn == p.getColumn() && finalRow == p.getRow() && !piece.getModel().equals(PieceModel.PAWN)) // if trying to eat the piece
-                    eats = true;
-                else if (piece.getPlayer().equals(p.getPlayer()) && finalColumn == p.getColumn() && finalRow == p.getRow() && !piece.getModel().equals(PieceModel.PAWN)) // else if blocks with its team piece
-                    defending = true;
-                else if (!piece.equals(p) && rows.contains(p.getRow()) && actualColumn == p.getColumn()) { // else if the piece is in front
-                    return true;
-                }
-            }
-            if (eats) return false; // if moving in front & eats/defends
-            if (defending) return false;
+    private void drawHighlights(Canvas canvas) {
+        if (columnsColoredSquares.size() < 2 || rowsColoredSquares.size() < 2)
+            return;
+        for (int n = 0; n < 2; n++) {
+            int i = rowsColoredSquares.get(n) - 1, j = columnsColoredSquares.get(n) - 1;
+            paint.setColor((i + j) % 2 == 0 ? brownMarkColor : lightMarkColor);
+            canvas.drawRect(squareLefts[j], squareTops[i], squareLefts[j] + squareSize, squareTops[i] + squareSize, paint);
         }
-        return false; //if not moving in front
     }
 
     /**
-     * Checks if there are any piece in lateral.
+     * Print all the pieces in his square on the board.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private boolean checkPieceInLateral(Piece piece, int actualRow, int actualColumn, int finalRow, int finalColumn) {
-        boolean eats = false, defending = false;
-        if (finalRow == actualRow) {
-            List<Integer> columns;
-            if (actualColumn >= finalColumn) {
-                columns = IntStream.rangeClosed(finalColumn, actualColumn).boxed().collect(Collectors.toList());
-                Collections.reverse(columns);
-            } else
-                columns = IntStream.rangeClosed(actualColumn, finalColumn).boxed().collect(Collectors.toList());
-            for (Piece p : board.getPieceList()) {
-                if (!piece.getPlayer().equals(p.getPlayer()) && finalRow == p.getRow() && finalColumn == p.getColumn() && !piece.getModel().equals(PieceModel.PAWN))
-                    eats = true;
-                else if (piece.getPlayer().equals(p.getPlayer()) && finalRow == p.getRow() && finalColumn == p.getColumn() && !piece.getModel().equals(PieceModel.PAWN))
-                    defending = true;
-                else if (!piece.equals(p) && columns.contains(p.getColumn()) && actualRow == p.getRow()) {
-                    return true;
-                }
-            }
-            if (eats) return false;
-            if (defending) return false;
+    private void initPieces(Canvas canvas) {
+        List<Piece> pieces = board.getPieceList();
+        for (int i = 0; i < pieces.size(); i++) { // no iterator, nothing allocated per frame
+            Piece p = pieces.get(i);
+            if (p != null)
+                canvas.drawBitmap(pieceBitmaps.get(p.getResID()),
+                        squareLefts[p.getColumn() - 1],
+                        squareTops[p.getRow() - 1],
+                        paint);
         }
-        return false;
     }
 
     /**
-     * Checks if there are any piece in diagonal.
+     * Switch the text between turns.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private boolean checkPieceInDiagonal(Piece piece, int actualRow, int actualColumn, int finalRow, int finalColumn) {
-        boolean eats = false, defending = false;
-        if (Math.abs(finalColumn - actualColumn) == Math.abs(finalRow - actualRow)) {
-            List<Integer> rows;
-            List<Integer> columns;
-            if (actualRow >= finalRow) {
-                rows = IntStream.rangeClosed(finalRow, actualRow).boxed().collect(Collectors.toList());
-                Collections.reverse(rows);
-            } else
-                rows = IntStream.rangeClosed(actualRow, finalRow).boxed().collect(Collectors.toList());
-
-            if (actualColumn >= finalColumn) {
-                columns = IntStream.rangeClosed(finalColumn, actualColumn).boxed().collect(Collectors.toList());
-                Collections.reverse(columns);
-            } else
-                columns = IntStream.rangeClosed(actualColumn, finalColumn).boxed().collect(Collectors.toList());
-
-            for (Piece p : board.getPieceList()) {
-                for (int i = 0; i < rows.size(); i++) {
-                    if (!piece.getPlayer().equals(p.getPlayer()) && finalColumn == p.getColumn() && finalRow == p.getRow() && !piece.getModel().equals(PieceModel.PAWN))
-                        eats = true;
-                    else if (piece.getPlayer().equals(p.getPlayer()) && finalColumn == p.getColumn() && finalRow == p.getRow() && !piece.getModel().equals(PieceModel.PAWN))
-                        defending = true;
-                    else if (!piece.equals(p) && rows.get(i) == p.getRow() && columns.get(i) == p.getColumn()) {
-                        return true;
-                    }
-                }
+    private void switchText(Canvas canvas) {
+        if (!checkMate) {
+            paint.setTextSize((canvasHeight / canvasWidth) * squareSize / 3.4f);
+            paint.setTypeface(Typeface.SERIF);
+            paint.setUnderlineText(false);
+            if (whiteTurn) {
+                paint.setColor(whiteColor);
+                canvas.drawText("White's Turn", originX + squareSize * 2.6f, canvasHeight - squareSize * 1.2f, paint);
+            } else {
+                paint.setColor(blackColor);
+                canvas.drawText("Black's Turn", originX + squareSize * 2.6f, originY / 1.4f, paint);
             }
-            if (eats) return false;
-            if (defending) return false;
         }
-        return false;
     }
 
     /**
-     * Check if the pawn is moving for the first time.
+     * Action of moving the piece.
      */
-    private boolean checkPawnFirstMove(Piece piece) {
-        if (piece.getPlayer().equals(Player.BLACK)) {
-            if (piece.getRow() == 2) {
-                return true;
-            }
-        } else if (piece.getPlayer().equals(Player.WHITE)) {
-            if (piece.getRow() == 7) {
-                return true;
-            }
-        }
-        return false;
-    }
+    private void movePiece(int actualRow, int actualColumn, int finalRow, int finalColumn) {
+        if (checkMate)
+            return;
 
-    /**
-     * Checks if can castle & execute it.
-     */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private void kingCastle(Piece king, int finalRow, int finalColumn) {
-        Piece rook = null;
-        if (kingChecked)
+        if (finalRow < 1 || finalRow > 8 || finalColumn < 1 || finalColumn > 8) //if goes out of the board
             return;
-        if (whiteKingFirstMove && king.getPlayer().equals(Player.WHITE)) {
-            if (whiteLongRookFirstMove && finalRow == 8 && finalColumn == 3) { // long white castle
-                for (Piece p : board.getPieceList()) {
-                    if (!p.getModel().equals(PieceModel.KING)) {
-                        if (p.getRow() == 8 && (p.getColumn() == 3 || p.getColumn() == 4)) { // if piece in the way
-                            return;
-                        }
-                        if (!p.getPlayer().equals(king.getPlayer())) {
-                            if (moveRules(p, p.getRow(), p.getColumn(), 8, 3, null, false)
-                                    || moveRules(p, p.getRow(), p.getColumn(), 8, 4, null, false)) { // if a enemy piece is looking at the castling
-                                return;
-                            }
-                        }
-                        if (p.getRow() == 8 && p.getColumn() == 1 && p.getModel().equals(PieceModel.ROOK))
-                            rook = p;
-                    }
-                }
-                if (rook != null) {
-                    rook.setColumn(4);
-                }
-                endTurn(king, finalColumn, finalRow, null);
-                whiteKingFirstMove = false;
-                whiteLongRookFirstMove = false;
-            } else if (whiteSortRookFirstMove && finalRow == 8 && finalColumn == 7) { // short white castle
-                for (Piece p : board.getPieceList()) {
-                    if (!p.getModel().equals(PieceModel.KING)) {
-                        if (p.getRow() == 8 && (p.getColumn() == 6 || p.getColumn() == 7)) {
-                            return;
-                        }
-                        if (!p.getPlayer().equals(king.getPlayer())) {
-                            if (moveRules(p, p.getRow(), p.getColumn(), 8, 6, null, false)
-                                    || moveRules(p, p.getRow(), p.getColumn(), 8, 7, null, false)) {
-                                return;
-                            }
-                        }
-                        if (p.getRow() == 8 && p.getColumn() == 8 && p.getModel().equals(PieceModel.ROOK))
-                            rook = p;
-                    }
-                }
-                if (rook != null) {
-                    rook.setColumn(6);
-                }
-                endTurn(king, finalColumn, finalRow, false);
-                whiteKingFirstMove = false;
-                whiteSortRookFirstMove = false;
-            }
 
-        } else if (blackKingFirstMove && king.getPlayer().equals(Player.BLACK)) {
-            if (blackLongRookFirstMove && finalRow == 1 && finalColumn == 3) { // long black castle
-                for (Piece p : board.getPieceList()) {
-                    if (!p.getModel().equals(PieceModel.KING)) {
-                        if (p.getRow() == 1 && (p.getColumn() == 3 || p.getColumn() == 4)) {
-                            return;
-                        }
-                        if (!p.getPlayer().equals(king.getPlayer())) {
-                            if (moveRules(p, p.getRow(), p.getColumn(), 1, 3, null, false)
-                                    || moveRules(p, p.getRow(), p.getColumn(), 1, 4, null, false)) {
-                                return;
-                            }
-                        }
-                        if (p.getRow() == 1 && p.getColumn() == 1 && p.getModel().equals(PieceModel.ROOK))
-                            rook = p;
-                    }
-                }
-                if (rook != null) {
-                    rook.setColumn(4);
-                }
-                endTurn(king, finalColumn, finalRow, false);
-                blackKingFirstMove = false;
-                blackLongRookFirstMove = false;
-            } else if (blackSortRookFirstMove && finalRow == 1 && finalColumn == 7) { // short black castle
-                for (Piece p : board.getPieceList()) {
-                    if (!p.getModel().equals(PieceModel.KING)) {
-                        if (p.getRow() == 1 && (p.getColumn() == 6 || p.getColumn() == 7)) {
-                            return;
-                        }
-                        if (!p.getPlayer().equals(king.getPlayer())) {
-                            if (moveRules(p, p.getRow(), p.getColumn(), 1, 6, new Piece(1, 6, Player.BLACK, PieceModel.KING, R.drawable.kingblack), false)
-                                    || moveRules(p, p.getRow(), p.getColumn(), 1, 7, new Piece(1, 6, Player.BLACK, PieceModel.KING, R.drawable.kingblack), false)) {
-                                return;
-                            }
-                        }
-                        if (p.getRow() == 1 && p.getColumn() == 8 && p.getModel().equals(PieceModel.ROOK))
-                            rook = p;
-                    }
-                }
-                if (rook != null) {
-                    rook.setColumn(6);
-                }
-                endTurn(king, finalColumn, finalRow, false);
-                blackKingFirstMove = false;
-                blackSortRookFirstMove = false;
-            }
+        Piece actualPiece = board.getPiece(actualRow, actualColumn); // search piece when first touch
+        if (actualPiece == null) { //if didn't touch a piece
+            return;
         }
+        if (actualPiece.getPlayer().equals(computerPlayer)) // the computer moves its own pieces
+            return;
+
+        int move = moveGenerator.legalMove(board.getPosition(), board.getAttackMap(), Position.square(actualRow, actualColumn), Position.square(finalRow, finalColumn));
+        if (move != Move.NONE)
+            endTurn(actualPiece, move);
     }
 
     /**
      * Menu when crowning a pawn.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
     private void coronationMenu(Piece piece) {
         final Dialog fbDialogue = new Dialog(ChessView.this.getContext(), android.R.style.Theme_Black_NoTitleBar);
         fbDialogue.getWindow().setBackgroundDrawable(new ColorDrawable(Color.argb(100, 0, 0, 0)));
         fbDialogue.setContentView(R.layout.coronation_menu);
         fbDialogue.setCancelable(true);
+        fbDialogue.setOnDismissListener(dialog -> { // once the crowned model is known
+            kingCheck();
+            if (!kingChecked)
+                kingStalemate();
+            else if (!checkMate)
+                sounds.play(Sounds.CHECK);
+            computerTurn();
+        });
         fbDialogue.show();
 
         onClickListener = v -> {
             if (v.getResources().getResourceEntryName(v.getId()).contains("queen")) {
-                piece.setModel(PieceModel.QUEEN);
                 if (piece.getPlayer().equals(Player.WHITE))
-                    piece.setResID(R.drawable.queenwhite);
+                    board.promote(piece, PieceModel.QUEEN, R.drawable.queenwhite);
                 else
-                    piece.setResID(R.drawable.queenblack);
+                    board.promote(piece, PieceModel.QUEEN, R.drawable.queenblack);
             } else if (v.getResources().getResourceEntryName(v.getId()).contains("knight")) {
-                piece.setModel(PieceModel.KNIGHT);
                 if (piece.getPlayer().equals(Player.WHITE))
-                    piece.setResID(R.drawable.knightwhite);
+                    board.promote(piece, PieceModel.KNIGHT, R.drawable.knightwhite);
                 else
-                    piece.setResID(R.drawable.knightblack);
+                    board.promote(piece, PieceModel.KNIGHT, R.drawable.knightblack);
             } else if (v.getResources().getResourceEntryName(v.getId()).contains("rook")) {
-                piece.setModel(PieceModel.ROOK);
                 if (piece.getPlayer().equals(Player.WHITE))
-                    piece.setResID(R.drawable.rookwhite);
+                    board.promote(piece, PieceModel.ROOK, R.drawable.rookwhite);
                 else
-                    piece.setResID(R.drawable.rookblack);
+                    board.promote(piece, PieceModel.ROOK, R.drawable.rookblack);
             } else if (v.getResources().getResourceEntryName(v.getId()).contains("bishop")) {
-                piece.setModel(PieceModel.BISHOP);
                 if (piece.getPlayer().equals(Player.WHITE))
-                    piece.setResID(R.drawable.bishopwhite);
+                    board.promote(piece, PieceModel.BISHOP, R.drawable.bishopwhite);
                 else
-                    piece.setResID(R.drawable.bishopblack);
+                    board.promote(piece, PieceModel.BISHOP, R.drawable.bishopblack);
             }
+            int last = record.getMove(record.size() - 1); // crowned as the player chose
+            record.setMove(record.size() - 1, Move.crowning(Move.from(last), Move.to(last), last & Move.CAPTURE, piece.getModel()));
+            logMove();
             if (fbDialogue.isShowing())
                 fbDialogue.dismiss();
-            kingCheck();
             ChessView chessView = (ChessView) findViewById(R.id.chess_view);
             chessView.invalidate();
         };
@@ -1069,442 +640,246 @@ public class ChessView extends View {
     /**
      * Logic when a turn ends.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private void endTurn(Piece piece, int finalColumn, int finalRow, Boolean eats) {
-        if (!enPassantMove) {
-            enPassantColumn = 0;
-            enPassantRow = 0;
-        } else
-            enPassantMove = false;
+    private void endTurn(Piece piece, int move) {
         columnsColoredSquares = new ArrayList<>();
         rowsColoredSquares = new ArrayList<>();
         columnsColoredSquares.add(piece.getColumn());
-        columnsColoredSquares.add(finalColumn);
+        columnsColoredSquares.add(Position.column(Move.to(move)));
         rowsColoredSquares.add(piece.getRow());
-        rowsColoredSquares.add(finalRow);
-        piece.setColumn(finalColumn);
-        piece.setRow(finalRow);
-        whiteTurn = !whiteTurn;
+        rowsColoredSquares.add(Position.row(Move.to(move)));
+        record.addMove(move);
+        board.play(move);
+        engine.cancelAll(); // hints for the last position are useless
+        whiteTurn = board.getPosition().getSideToMove().equals(Player.WHITE);
         ChessView chessView = (ChessView) findViewById(R.id.chess_view);
         chessView.invalidate();
 
-        if (whiteTurn) {
-            saveBlackTime = true;
-            initWhiteTimer(timeWhite);
+        clock.press();
+        removeCallbacks(clockTick);
+        tickClock();
+        boolean choosingCrown = Move.promotion(move) != null && !piece.getPlayer().equals(computerPlayer);
+        logMove();
+        if (!choosingCrown && record.size() - snapshotPlies >= SNAPSHOT_PLIES) // not before the crowning is logged
+            snapshot();
+        if (choosingCrown) {
+            coronationMenu(piece); // the verdict waits for the model the player picks
         } else {
-            saveWhiteTime = true;
-            initBlackTimer(timeBlack);
+            kingCheck();
+            if (!kingChecked)
+                kingStalemate();
         }
-        kingCheck();
-        if (!kingChecked)
-            kingStalemate();
 
         if (blackDraw)
             blackDraw = false;
         if (whiteDraw)
             whiteDraw = false;
 
-        if (kingChecked) {
-            checkMP.start();
-        } else if (eats == null) {
-            castleMP.start();
-        } else if (eats) {
-            eatMP.start();
+        if (kingChecked && !choosingCrown) {
+            sounds.play(Sounds.CHECK);
+        } else if (Move.isCastle(move)) {
+            sounds.play(Sounds.CASTLE);
+        } else if (Move.isCapture(move)) {
+            sounds.play(Sounds.EAT);
         } else {
-            moveMP.start();
+            sounds.play(Sounds.MOVE);
         }
+        if (!choosingCrown)
+            computerTurn();
     }
 
     /**
      * Checks if the king have been checked.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
     private void kingCheck() {
-        if (piecesChecking.size() > 0)
-            piecesChecking = new ArrayList<>();
-        kingChecked = false;
-        rowsCheckList = null;
-        columnsCheckList = null;
-        Piece king = null;
-        for (Piece p : board.getPieceList())
-            if (p.getModel().equals(PieceModel.KING))
-                if ((whiteTurn && p.getPlayer().equals(Player.WHITE)) || (!whiteTurn && p.getPlayer().equals(Player.BLACK))) {
-                    king = p;
-                    break;
-                }
-
-        if (king != null) {
-            Piece checking;
-            for (Piece p : board.getPieceList()) {
-                if (!p.getPlayer().equals(king.getPlayer())) {
-                    if (moveRules(p, p.getRow(), p.getColumn(), king.getRow(), king.getColumn(), king, false)) {
-                        kingChecked = true;
-                        checking = p;
-                        piecesChecking.add(checking);
-                        getCheckSquareList(p, king);
-                        kingCheckMated(p, king);
-                    }
-                }
-            }
-            if (piecesChecking.size() >= 1) {
-                if (king.getPlayer().equals(Player.WHITE)) { //draw kingcheck model
-                    board.getPieceList().get(board.getPieceList().indexOf(king)).setResID(R.drawable.kingwhitecheck);
-                } else
-                    board.getPieceList().get(board.getPieceList().indexOf(king)).setResID(R.drawable.kingblackcheck);
-            } else { //draw original model
-                for (Piece p : board.getPieceList()) {
-                    if (p.getModel().equals(PieceModel.KING)) {
-                        if (p.getPlayer().equals(Player.WHITE))
-                            p.setResID(R.drawable.kingwhite);
-                        else
-                            p.setResID(R.drawable.kingblack);
-                    }
-                }
-            }
+        metrics.start(Metrics.KING_CHECK);
+        Player player = board.getPosition().getSideToMove();
+        kingChecked = board.getAttackMap().isInCheck(board.getPosition(), player);
+        Piece whiteKing = board.getKing(Player.WHITE), blackKing = board.getKing(Player.BLACK);
+        if (whiteKing != null) //draw original model
+            whiteKing.setResID(R.drawable.kingwhite);
+        if (blackKing != null)
+            blackKing.setResID(R.drawable.kingblack);
+        if (kingChecked) {
+            Piece king = board.getKing(player);
+            if (king.getPlayer().equals(Player.WHITE)) //draw kingcheck model
+                king.setResID(R.drawable.kingwhitecheck);
+            else
+                king.setResID(R.drawable.kingblackcheck);
+            kingCheckMated(king);
         }
+        metrics.stop(Metrics.KING_CHECK);
         ChessView chessView = (ChessView) findViewById(R.id.chess_view);
         chessView.invalidate();
     }
 
     /**
-     * Loads the variables for rows & columns between the checkingPiece and the king.
+     * Checks if the king is staleMated.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private void getCheckSquareList(Piece p, Piece king) {
-        switch (p.getModel()) {
-            case ROOK:
-                if (king.getRow() == p.getRow()) {
-                    if (p.getColumn() >= king.getColumn()) {
-                        columnsCheckList = IntStream.rangeClosed(king.getColumn() + 1, p.getColumn() - 1).boxed().collect(Collectors.toList());
-                        Collections.reverse(columnsCheckList);
-                    } else
-                        columnsCheckList = IntStream.rangeClosed(p.getColumn() + 1, king.getColumn() - 1).boxed().collect(Collectors.toList());
-                } else if (king.getColumn() == p.getColumn()) {
-                    if (p.getRow() >= king.getRow()) {
-                        rowsCheckList = IntStream.rangeClosed(king.getRow() + 1, p.getRow() - 1).boxed().collect(Collectors.toList());
-                        Collections.reverse(rowsCheckList);
-                    } else
-                        rowsCheckList = IntStream.rangeClosed(p.getRow() + 1, king.getRow() - 1).boxed().collect(Collectors.toList());
-                }
-                break;
-            case BISHOP:
-                if (p.getRow() >= king.getRow()) {
-                    rowsCheckList = IntStream.rangeClosed(king.getRow() + 1, p.getRow() - 1).boxed().collect(Collectors.toList());
-                    Collections.reverse(rowsCheckList);
-                } else
-                    rowsCheckList = IntStream.rangeClosed(p.getRow() + 1, king.getRow() - 1).boxed().collect(Collectors.toList());
-
-                if (p.getColumn() >= king.getColumn()) {
-                    columnsCheckList = IntStream.rangeClosed(king.getColumn() + 1, p.getColumn() - 1).boxed().collect(Collectors.toList());
-                    Collections.reverse(columnsCheckList);
-                } else
-                    columnsCheckList = IntStream.rangeClosed(p.getColumn() + 1, king.getColumn() - 1).boxed().collect(Collectors.toList());
-                break;
-            case QUEEN:
-                if (king.getRow() == p.getRow()) {
-                    if (p.getColumn() >= king.getColumn()) {
-                        columnsCheckList = IntStream.rangeClosed(king.getColumn() + 1, p.getColumn() - 1).boxed().collect(Collectors.toList());
-                        Collections.reverse(columnsCheckList);
-                    } else
-                        columnsCheckList = IntStream.rangeClosed(p.getColumn() + 1, king.getColumn() - 1).boxed().collect(Collectors.toList());
+    private void kingStalemate() {
+        metrics.start(Metrics.KING_STALEMATE);
+        Position position = board.getPosition();
+        boolean stalemated = board.getAttackMap().kingEscapes(position, position.getSideToMove()) == 0L && !hasLegalMove(position);
+        metrics.stop(Metrics.KING_STALEMATE);
+        if (!stalemated)
+            return;
+        checkMate = true;
+        endMessage = "Draw";
+        endReasonMessage = "by stalemate";
+        record.setTermination(PgnGame.Termination.STALEMATE);
+        sounds.play(Sounds.CHECK_MATE);
+    }
 
-                } else if (king.getColumn() == p.getColumn()) {
-                    if (p.getRow() >= king.getRow()) {
-                        rowsCheckList = IntStream.rangeClosed(king.getRow() + 1, p.getRow() - 1).boxed().collect(Collectors.toList());
-                        Collections.reverse(rowsCheckList);
-                    } else
-                        rowsCheckList = IntStream.rangeClosed(p.getRow() + 1, king.getRow() - 1).boxed().collect(Collectors.toList());
+    /**
+     * Checks if the king is checkMated.
+     */
+    private void kingCheckMated(Piece king) {
+        Position position = board.getPosition();
+        AttackMap attackMap = board.getAttackMap();
+        if (attackMap.kingEscapes(position, king.getPlayer()) != 0L)
+            return;
+        // with two checkers only the king can move, else look for a block or a capture
+        if (Long.bitCount(attackMap.checkers(position, king.getPlayer())) < 2 && hasLegalMove(position))
+            return;
+        // if reach here, win
+        checkMate = true;
+        endMessage = (king.getPlayer().equals(Player.WHITE) ? "Black" : "White") + " Wins!";
+        endReasonMessage = "by checkmate";
+        record.setTermination(PgnGame.Termination.CHECKMATE);
+        sounds.play(Sounds.CHECK_MATE);
+    }
 
-                } else {
-                    if (p.getRow() >= king.getRow()) {
-                        rowsCheckList = IntStream.rangeClosed(king.getRow() + 1, p.getRow() - 1).boxed().collect(Collectors.toList());
-                        Collections.reverse(rowsCheckList);
-                    } else
-                        rowsCheckList = IntStream.rangeClosed(p.getRow() + 1, king.getRow() - 1).boxed().collect(Collectors.toList());
+    /**
+     * Appends the finished game to games.pgn & to the games.bin archive in the files of the app,
+     * on a thread of its own.
+     */
+    private void saveGame() {
+        recorded = true;
+        record.setTag("White", Player.WHITE.equals(computerPlayer) ? "Computer" : "Player");
+        record.setTag("Black", Player.BLACK.equals(computerPlayer) ? "Computer" : "Player");
+        record.setResult(endMessage.startsWith("White") ? PgnGame.WHITE_WINS
+                : endMessage.startsWith("Black") ? PgnGame.BLACK_WINS : PgnGame.DRAW);
+        record.setClocks(Math.max(0, clock.remainingNanos(Player.WHITE) / 1000000), Math.max(0, clock.remainingNanos(Player.BLACK) / 1000000));
+        PgnGame game = record; // the next game gets a record of its own
+        journal().clear(); // it's over, a relaunch starts a new one
+        File file = new File(getContext().getFilesDir(), "games.pgn");
+        File archive = new File(getContext().getFilesDir(), "games.bin");
+        Thread writer = new Thread(() -> {
+            synchronized (ChessView.class) { // one game at a time in the files
+                try (PgnWriter pgn = new PgnWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+                     GameArchiveWriter games = openArchive(archive)) {
+                    pgn.write(game);
+                    games.write(game);
+                } catch (IOException e) {
+                    Log.e("ChessView", "Can't save the game to " + file, e); // a full disk shouldn't crash the app
+                }
+            }
+        }, "pgn-save");
+        writer.start();
+    }
 
-                    if (p.getColumn() >= king.getColumn()) {
-                        columnsCheckList = IntStream.rangeClosed(king.getColumn() + 1, p.getColumn() - 1).boxed().collect(Collectors.toList());
-                        Collections.reverse(columnsCheckList);
-                    } else
-                        columnsCheckList = IntStream.rangeClosed(p.getColumn() + 1, king.getColumn() - 1).boxed().collect(Collectors.toList());
-                }
-                break;
+    /**
+     * Opens the archive to add games. One it can't read is moved to games.bin.bad, so the games
+     * after it aren't lost too.
+     */
+    private static GameArchiveWriter openArchive(File archive) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(archive, "rw");
+        try {
+            return new GameArchiveWriter(file.getChannel());
+        } catch (IOException e) {
+            file.close();
+            Log.e("ChessView", "Setting " + archive + " aside", e);
+            if (!archive.renameTo(new File(archive.getPath() + ".bad")))
+                throw new IOException("Can't set " + archive + " aside", e);
+            return new GameArchiveWriter(new RandomAccessFile(archive, "rw").getChannel());
         }
     }
 
     /**
-     * Checks if the king is staleMated.
+     * Sets the time control of the games started from now on.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private void kingStalemate() {
-        Piece king = null;
-        for (Piece p : board.getPieceList())
-            if (p.getModel().equals(PieceModel.KING))
-                if ((whiteTurn && p.getPlayer().equals(Player.WHITE)) || (!whiteTurn && p.getPlayer().equals(Player.BLACK))) {
-                    king = p;
-                    break;
-                }
+    public void setTimeControl(long baseMillis, long incrementMillis, ChessClock.Mode mode) {
+        matchTime = baseMillis;
+        incrementTime = incrementMillis;
+        clockMode = mode;
+    }
 
-        for (Piece myPiece : board.getPieceList()) { // check if any piece can move
-            if (king.getPlayer().equals(myPiece.getPlayer())) {
-                if (myPiece.getModel().equals(PieceModel.PAWN)) { // if a pawn is not blocked
-                    if (moveRules(myPiece, myPiece.getRow(), myPiece.getColumn(), (myPiece.getPlayer().equals(Player.WHITE)) ? myPiece.getRow() - 1 : myPiece.getRow() + 1, myPiece.getColumn(), null, false)) {
-                        return;
-                    }
-                }
-                for (Piece itsPiece : board.getPieceList()) {
-                    if (xRay(itsPiece, king)) {
-                        if (!actualPieceAloneOnXRay(itsPiece, king, myPiece)) { // if any piece isn't alone in xRay (so can move)
-                            return;
-                        }
-                    }
-                }
-            }
-        }
-        for (int row = -1; row <= 1; row++) { // if the king has no squares to go
-            for (int column = -1; column <= 1; column++) {
-                if (king.getRow() + row >= 1 && king.getRow() + row <= 8 && king.getColumn() + column >= 1 && king.getColumn() + column <= 8) {
-                    Piece otherPieceAux = null;
-                    for (Piece p : board.getPieceList()) {
-                        if (!p.equals(king) && p.getRow() == king.getRow() + row && p.getColumn() == king.getColumn() + column) {
-                            otherPieceAux = p;
-                            break;
-                        }
-                    }
-                    if (moveRules(king, king.getRow(), king.getColumn(), king.getRow() + row, king.getColumn() + column, otherPieceAux, false)) {
-                        return;
-                    }
-                }
-            }
-        }
-        // if reach here, king stalemated
-        checkMate = true;
-        endMessage = "Draw";
-        endReasonMessage = "by stalemate";
-        checkMateMP.start();
+    /**
+     * Shows or hides the latency overlay, which also counts the allocations of every phase.
+     */
+    public void setMetricsOverlay(boolean shown) {
+        metrics.setEnabled(shown);
+        invalidate();
     }
 
     /**
-     * Checks if a piece is looking at the king through xRay.
+     * Writes the latency metrics to a file of the app and returns it.
      */
-    private boolean xRay(Piece piece, Piece king) {
-        switch (piece.getModel()) {
-            case ROOK:
-                if (piece.getColumn() == king.getColumn() || piece.getRow() == king.getRow()) {
-                    return true;
-                }
-                break;
-            case BISHOP:
-                if (Math.abs(piece.getColumn() - king.getColumn()) == Math.abs(piece.getRow() - king.getRow())) {
-                    return true;
-                }
-                break;
-            case QUEEN:
-                if (piece.getColumn() == king.getColumn() || piece.getRow() == king.getRow())
-                    return true;
-                else if (Math.abs(piece.getColumn() - king.getColumn()) == Math.abs(piece.getRow() - king.getRow()))
-                    return true;
-                break;
-        }
-        return false;
+    public File exportMetrics() {
+        File file = new File(getContext().getFilesDir(), "metrics.txt");
+        metrics.dump(file);
+        return file;
     }
 
     /**
-     * Checks if a piece is the only one in the sight of a piece looking at the king through xRay.
+     * Lets the computer play the pieces of the player, or nobody with null.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private boolean actualPieceAloneOnXRay(Piece piece, Piece king, Piece actualPiece) {
-        getCheckSquareList(piece, king);
-        rowsXRayList = rowsCheckList;
-        columnsXRayList = columnsCheckList;
-        rowsCheckList = null;
-        columnsCheckList = null;
-        List<Piece> piecesXRay = new ArrayList<>();
-        if (rowsXRayList != null && columnsXRayList != null) { //if putting a piece in diagonal of the check
-            for (Piece p : board.getPieceList()) {
-                for (int i = 0; i < rowsXRayList.size(); i++) {
-                    if (rowsXRayList.get(i) == p.getRow() && columnsXRayList.get(i) == p.getColumn()) {
-                        piecesXRay.add(p);
-                    }
-                }
-            }
-        } else if (rowsXRayList != null) { //if putting a piece in front of the check
-            for (Piece p : board.getPieceList()) {
-                for (int i = 0; i < rowsXRayList.size(); i++) {
-                    if (p.getColumn() == king.getColumn() && rowsXRayList.get(i) == p.getRow()) {
-                        piecesXRay.add(p);
-                    }
-                }
-            }
-        } else if (columnsXRayList != null) { //if putting a piece in lateral of the check
-            for (Piece p : board.getPieceList()) {
-                for (int i = 0; i < columnsXRayList.size(); i++) {
-                    if (p.getRow() == king.getRow() && columnsXRayList.get(i) == p.getColumn()) {
-                        piecesXRay.add(p);
-                    }
-                }
-            }
-        }
-        if (piecesXRay != null && piecesXRay.contains(actualPiece)) {
-            if (piecesXRay.size() == 1) {
-                return true;
-            }
-        }
-        return false;
+    public void setComputerPlayer(Player player) {
+        computerPlayer = player;
+        if (board != null)
+            computerTurn();
     }
 
     /**
-     * Checks if a piece can move if his king is looked through xRay.
+     * If the computer moves now, searches the position on the engine with a slice of its time
+     * left, then plays the move found. A new game cancels the search.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private void moveOnXRay(Piece p, Piece piece, int finalColumn, int finalRow) {
-        boolean eats = false;
-        switch (p.getModel()) {
-            case ROOK:
-                if (rowsXRayList != null) {
-                    if ((rowsXRayList.contains(finalRow) || p.getRow() == finalRow) && p.getColumn() == finalColumn) {
-                        if (p.getRow() == finalRow) {
-                            board.getPieceList().remove(p);
-                            eats = true;
-                        }
-                        endTurn(piece, finalColumn, finalRow, eats);
-                    }
-                } else if (columnsXRayList != null) {
-                    if ((columnsXRayList.contains(finalColumn) || p.getColumn() == finalColumn) && p.getRow() == finalRow) {
-                        if (p.getColumn() == finalColumn) {
-                            board.getPieceList().remove(p);
-                            eats = true;
-                        }
-                        endTurn(piece, finalColumn, finalRow, eats);
-                    }
-                }
-                break;
-            case BISHOP:
-                if (rowsXRayList != null && columnsXRayList != null) {
-                    for (int i = 0; i < rowsXRayList.size(); i++) {
-                        if ((rowsXRayList.get(i) == finalRow && columnsXRayList.get(i) == finalColumn) || (p.getRow() == finalRow && p.getColumn() == finalColumn)) {
-                            if (p.getRow() == finalRow && p.getColumn() == finalColumn) {
-                                board.getPieceList().remove(p);
-                                eats = true;
-                            }
-                            endTurn(piece, finalColumn, finalRow, eats);
-                        }
-                    }
-                }
-                break;
-            case QUEEN:
-                if (rowsXRayList != null && columnsXRayList != null) {
-                    for (int i = 0; i < rowsXRayList.size(); i++) {
-                        if ((rowsXRayList.get(i) == finalRow && columnsXRayList.get(i) == finalColumn) || (p.getRow() == finalRow && p.getColumn() == finalColumn)) {
-                            if (p.getRow() == finalRow && p.getColumn() == finalColumn) {
-                                board.getPieceList().remove(p);
-                                eats = true;
-                            }
-                            endTurn(piece, finalColumn, finalRow, eats);
-                        }
-                    }
-                } else if (rowsXRayList != null) {
-                    if ((rowsXRayList.contains(finalRow) || p.getRow() == finalRow) && p.getColumn() == finalColumn) {
-                        if (p.getRow() == finalRow) {
-                            board.getPieceList().remove(p);
-                            eats = true;
-                        }
-                        endTurn(piece, finalColumn, finalRow, eats);
-                    }
-                } else if (columnsXRayList != null) {
-                    if ((columnsXRayList.contains(finalColumn) || p.getColumn() == finalColumn) && p.getRow() == finalRow) {
-                        if (p.getColumn() == finalColumn) {
-                            board.getPieceList().remove(p);
-                            eats = true;
-                        }
-                        endTurn(piece, finalColumn, finalRow, eats);
-                    }
-                }
-                break;
-        }
-        rowsXRayList = null;
-        columnsXRayList = null;
+    private void computerTurn() {
+        if (computerPlayer == null || (computerJob != null && !computerJob.isDone()) || checkMate
+                || !board.getPosition().getSideToMove().equals(computerPlayer))
+            return;
+        long timeLeft = clock.remainingNanos(computerPlayer) / 1000000;
+        long millis = Math.max(timeLeft / 30, 100); // about 30 more moves to play
+        Board searchedBoard = board;
+        long key = board.getPosition().getKey();
+        computerJob = engine.bestMove(search, board.getPosition(), millis, move -> {
+            if (board != searchedBoard || board.getPosition().getKey() != key) // a new game or another move came first
+                return;
+            if (move != Move.NONE && !checkMate && board.getPosition().getSideToMove().equals(computerPlayer))
+                endTurn(board.getPiece(Position.row(Move.from(move)), Position.column(Move.from(move))), move);
+        });
     }
 
     /**
-     * Checks if the king is checkMated.
+     * Looks for the best move of the player to move on a couple of cores for a couple of seconds and
+     * marks its squares, unless a move is played meanwhile.
      */
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private void kingCheckMated(Piece checkingPiece, Piece king) {
-        if (piecesChecking.size() == 1) {
-            if (rowsCheckList != null && rowsCheckList.size() > 0 && columnsCheckList != null && columnsCheckList.size() > 0) { //if putting a piece in diagonal of the check
-                for (int i = 0; i < rowsCheckList.size(); i++) {
-                    for (Piece p : board.getPieceList()) {
-                        if (p.getPlayer().equals(king.getPlayer()))
-                            if (moveRules(p, p.getRow(), p.getColumn(), rowsCheckList.get(i), columnsCheckList.get(i), null, false)) {
-                                return;
-                            }
-                    }
-                }
-            } else if (rowsCheckList != null && rowsCheckList.size() > 0) { //if putting a piece in front of the check
-                for (int i = 0; i < rowsCheckList.size(); i++) {
-                    for (Piece p : board.getPieceList()) {
-                        if (p.getPlayer().equals(king.getPlayer()))
-                            if (moveRules(p, p.getRow(), p.getColumn(), rowsCheckList.get(i), checkingPiece.getColumn(), null, false)) {
-                                return;
-                            }
-                    }
-                }
-            } else if (columnsCheckList != null && columnsCheckList.size() > 0) { //if putting a piece in lateral of the check
-                for (int i = 0; i < columnsCheckList.size(); i++) {
-                    for (Piece p : board.getPieceList()) {
-                        if (p.getPlayer().equals(king.getPlayer())) {
-                            if (moveRules(p, p.getRow(), p.getColumn(), checkingPiece.getRow(), columnsCheckList.get(i), null, false)) {
-                                return;
-                            }
-                        }
-                    }
-                }
-            }
-            // if can eat the checkingPiece
-            for (Piece p : board.getPieceList()) {
-                if (p.getPlayer().equals(king.getPlayer()))
-                    if (moveRules(p, p.getRow(), p.getColumn(), checkingPiece.getRow(), checkingPiece.getColumn(), checkingPiece, false)) {
-                        return;
-                    }
-            }
-            // if the king can move
-            for (int row = -1; row <= 1; row++) {
-                for (int column = -1; column <= 1; column++) {
-                    if (king.getRow() + row >= 1 && king.getRow() + row <= 8 && king.getColumn() + column >= 1 && king.getColumn() + column <= 8) {
-                        Piece otherPieceAux = null;
-                        for (Piece p : board.getPieceList()) {
-                            if (!p.equals(king) && p.getRow() == king.getRow() + row && p.getColumn() == king.getColumn() + column) {
-                                otherPieceAux = p;
-                                break;
-                            }
-                        }
-                        if (moveRules(king, king.getRow(), king.getColumn(), king.getRow() + row, king.getColumn() + column, otherPieceAux, false)) {
-                            if (!xRay(checkingPiece, new Piece(king.getRow() + row, king.getColumn() + column, king.getPlayer(), king.getModel(), king.getResID()))) {
-                                return;
-                            }
-                        }
-                    }
-                }
-            }
-        } else if (piecesChecking.size() == 2) {
-            for (int row = -1; row <= 1; row++) {
-                for (int column = -1; column <= 1; column++) {
-                    Piece otherPiece = null;
-                    for (Piece p : board.getPieceList()) {
-                        if (!p.equals(king) && p.getRow() == king.getRow() + row && p.getColumn() == king.getColumn() + column)
-                            otherPiece = p;
-                    }
-                    if (moveRules(king, king.getRow(), king.getColumn(), king.getRow() + row, king.getColumn() + column, (otherPiece != null) ? otherPiece : null, false)) {
-                        return;
-                    }
-                }
-            }
-        }
-        // if reach here, win
-        checkMate = true;
-        endMessage = (king.getPlayer().equals(Player.WHITE) ? "Black" : "White") + " Wins!";
-        endReasonMessage = "by checkmate";
-        checkMateMP.start();
+    public void showHint() {
+        if (board == null || checkMate || (hintJob != null && !hintJob.isDone()))
+            return;
+        Board analysedBoard = board;
+        long key = board.getPosition().getKey();
+        hintJob = engine.analyse(analysis, board.getPosition(), 2000, Search.MAX_PLY, EngineExecutor.Priority.INTERACTIVE, move -> {
+            if (board != analysedBoard || board.getPosition().getKey() != key || move == Move.NONE)
+                return;
+            columnsColoredSquares = new ArrayList<>();
+            rowsColoredSquares = new ArrayList<>();
+            columnsColoredSquares.add(Position.column(Move.from(move)));
+            columnsColoredSquares.add(Position.column(Move.to(move)));
+            rowsColoredSquares.add(Position.row(Move.from(move)));
+            rowsColoredSquares.add(Position.row(Move.to(move)));
+            invalidate();
+        });
+    }
+
+    /**
+     * Checks if the player to move can move, remembering the answer for positions seen again.
+     */
+    private boolean hasLegalMove(Position position) {
+        long data = positionCache.probe(position.getKey());
+        if (data != TranspositionTable.MISS)
+            return TranspositionTable.move(data) != Move.NONE;
+        int move = moveGenerator.firstLegalMove(position);
+        positionCache.store(position.getKey(), move, 0, 0, TranspositionTable.EXACT);
+        return move != Move.NONE;
     }
 }
\ No newline at end of file
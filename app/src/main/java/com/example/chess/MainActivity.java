@@ -3,6 +3,11 @@ package com.example.chess;
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.Toast;
+
+import java.io.File;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -11,4 +16,38 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
     }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.hint) {
+            ChessView chessView = findViewById(R.id.chess_view);
+            chessView.showHint();
+            return true;
+        }
+        if (item.getItemId() == R.id.computer_black) { // the computer takes the black pieces
+            item.setChecked(!item.isChecked());
+            ChessView chessView = findViewById(R.id.chess_view);
+            chessView.setComputerPlayer(item.isChecked() ? Player.BLACK : null);
+            return true;
+        }
+        if (item.getItemId() == R.id.metrics) { // latency overlay for the developers
+            item.setChecked(!item.isChecked());
+            ChessView chessView = findViewById(R.id.chess_view);
+            chessView.setMetricsOverlay(item.isChecked());
+            return true;
+        }
+        if (item.getItemId() == R.id.export_metrics) {
+            ChessView chessView = findViewById(R.id.chess_view);
+            File file = chessView.exportMetrics();
+            Toast.makeText(this, getString(R.string.metrics_exported, file.getPath()), Toast.LENGTH_LONG).show();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+package com.example.chess;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Latency of the drawing & rules phases of the view: every run is timed in nanoseconds into a
+ * histogram giving p50, p95 & p99. While enabled the objects & bytes allocated by each phase are
+ * counted too and an overlay can be drawn. Recording allocates nothing, phases can nest but not
+ * recurse.
+ */
+public class Metrics {
+    public static final int DRAW = 0, MOVE_PIECE = 1, KING_CHECK = 2, KING_STALEMATE = 3;
+
+    private static final String[] NAMES = {"onDraw", "movePiece", "kingCheck", "kingStalemate"};
+    private static final int SUB_BUCKETS = 8; // 3 bits under the highest one, 12.5% precision
+    private static final int BUCKETS = 61 * SUB_BUCKETS;
+    private static final long OVERLAY_REFRESH = 500; // milliseconds
+
+    private final long[][] counts = new long[NAMES.length][BUCKETS];
+    private final long[] runs = new long[NAMES.length], maxima = new long[NAMES.length];
+    private final long[] starts = new long[NAMES.length];
+    private final long[] allocations = new long[NAMES.length], allocatedBytes = new long[NAMES.length];
+    private final long[] startAllocations = new long[NAMES.length], startAllocatedBytes = new long[NAMES.length];
+    private final String[] overlay = new String[NAMES.length];
+    private long overlayTime;
+    private boolean enabled;
+
+    /**
+     * Turns the allocation counting & the overlay on or off, timings are always recorded.
+     */
+    @SuppressWarnings("deprecation") // the only per-thread allocation counters there are
+    public void setEnabled(boolean enabled) {
+        if (this.enabled == enabled)
+            return;
+        this.enabled = enabled;
+        if (enabled) {
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+            Debug.startAllocCounting();
+        } else
+            Debug.stopAllocCounting();
+        overlayTime = 0;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing a run of the phase.
+     */
+    @SuppressWarnings("deprecation")
+    public void start(int phase) {
+        if (enabled) {
+            startAllocations[phase] = Debug.getThreadAllocCount();
+            startAllocatedBytes[phase] = Debug.getThreadAllocSize();
+        }
+        starts[phase] = System.nanoTime();
+    }
+
+    /**
+     * Records the run of the phase started last.
+     */
+    @SuppressWarnings("deprecation")
+    public void stop(int phase) {
+        long nanos = System.nanoTime() - starts[phase];
+        counts[phase][bucket(nanos)]++;
+        runs[phase]++;
+        maxima[phase] = Math.max(maxima[phase], nanos);
+        if (enabled) {
+            allocations[phase] += Debug.getThreadAllocCount() - startAllocations[phase];
+            allocatedBytes[phase] += Debug.getThreadAllocSize() - startAllocatedBytes[phase];
+        }
+    }
+
+    /**
+     * Nanoseconds under which the fraction of the runs of the phase took, 0 without runs.
+     */
+    public long percentile(int phase, double fraction) {
+        long rank = (long) Math.ceil(fraction * runs[phase]), seen = 0;
+        for (int i = 0; i < BUCKETS && rank > 0; i++) {
+            seen += counts[phase][i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), maxima[phase]);
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets every run recorded.
+     */
+    public void reset() {
+        for (int phase = 0; phase < NAMES.length; phase++) {
+            Arrays.fill(counts[phase], 0L);
+            runs[phase] = maxima[phase] = allocations[phase] = allocatedBytes[phase] = 0;
+        }
+        overlayTime = 0;
+    }
+
+    /**
+     * Draws a line per phase from x, y downwards, refreshed twice a second.
+     */
+    public void drawOverlay(Canvas canvas, Paint paint, float x, float y) {
+        long now = SystemClock.uptimeMillis();
+        if (now - overlayTime >= OVERLAY_REFRESH || overlayTime == 0) { // building the text allocates
+            for (int phase = 0; phase < NAMES.length; phase++)
+                overlay[phase] = line(phase);
+            overlayTime = now;
+        }
+        for (int phase = 0; phase < NAMES.length; phase++)
+            canvas.drawText(overlay[phase], x, y + phase * paint.getTextSize() * 1.2f, paint);
+    }
+
+    /**
+     * The metrics as text, a line per phase.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "# %s %s, Android %s%n",
+                Build.MANUFACTURER, Build.MODEL, Build.VERSION.RELEASE));
+        report.append("# phase runs p50_us p95_us p99_us max_us allocations bytes\n");
+        for (int phase = 0; phase < NAMES.length; phase++) {
+            report.append(String.format(Locale.ROOT, "%s %d %.1f %.1f %.1f %.1f %d %d%n", NAMES[phase], runs[phase],
+                    percentile(phase, .5) / 1e3, percentile(phase, .95) / 1e3, percentile(phase, .99) / 1e3,
+                    maxima[phase] / 1e3, allocations[phase], allocatedBytes[phase]));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes the report to the file on a thread of its own, so the disk doesn't hold the caller.
+     */
+    public void dump(File file) {
+        String report = report();
+        Thread writer = new Thread(() -> {
+            try (Writer out = new FileWriter(file)) {
+                out.write(report);
+            } catch (IOException e) {
+                Log.e("Metrics", "Can't write the metrics to " + file, e); // not worth a crash
+            }
+        }, "metrics-dump");
+        writer.start();
+    }
+
+    private String line(int phase) {
+        return String.format(Locale.ROOT, "%s p50 %.2f p95 %.2f p99 %.2f ms, %d allocs", NAMES[phase],
+                percentile(phase, .5) / 1e6, percentile(phase, .95) / 1e6, percentile(phase, .99) / 1e6,
+                runs[phase] == 0 ? 0 : allocations[phase] / runs[phase]);
+    }
+
+    /**
+     * Bucket of a duration: exact under 8 ns, then 8 buckets per power of two.
+     */
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int) Math.max(nanos, 0);
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return (exponent - 2) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Longest duration falling in the bucket.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + 2, sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+    }
+}
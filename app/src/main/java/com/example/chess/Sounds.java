@@ -0,0 +1,63 @@
+package com.example.chess;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.SoundPool;
+
+/**
+ * The sound effects of the game, decoded once into a SoundPool so they start at once and can
+ * overlap. A sound played before it finished loading plays as soon as it's loaded.
+ */
+public class Sounds {
+    public static final int MOVE = 0, EAT = 1, CHECK = 2, CHECK_MATE = 3, START_GAME = 4, CASTLE = 5;
+
+    private static final int[] RESOURCES = {
+            R.raw.move_sound,
+            R.raw.eat_sound,
+            R.raw.check_sound,
+            R.raw.check_mate_sound,
+            R.raw.start_game,
+            R.raw.castle_sound};
+    private static final int MAX_STREAMS = 4;
+
+    private final SoundPool pool;
+    private final int[] soundIds = new int[RESOURCES.length];
+    private final boolean[] loaded = new boolean[RESOURCES.length], pending = new boolean[RESOURCES.length];
+
+    public Sounds(Context context) {
+        pool = new SoundPool.Builder()
+                .setMaxStreams(MAX_STREAMS)
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_GAME)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .build();
+        pool.setOnLoadCompleteListener((soundPool, soundId, status) -> {
+            for (int sound = 0; sound < soundIds.length; sound++) {
+                if (soundIds[sound] == soundId && status == 0) {
+                    loaded[sound] = true;
+                    if (pending[sound])
+                        play(sound);
+                }
+            }
+        });
+        for (int sound = 0; sound < RESOURCES.length; sound++)
+            soundIds[sound] = pool.load(context, RESOURCES[sound], 1);
+    }
+
+    /**
+     * Plays the sound, over any other playing.
+     */
+    public void play(int sound) {
+        pending[sound] = !loaded[sound];
+        if (loaded[sound])
+            pool.play(soundIds[sound], 1f, 1f, 1, 0, 1f);
+    }
+
+    /**
+     * Frees the decoded sounds, nothing plays afterwards.
+     */
+    public void release() {
+        pool.release();
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.chess;
+
+import com.example.chess.engine.MoveGenerator;
+import com.example.chess.engine.Position;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BoardTest {
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+
+    @Test
+    public void crowningDecidesTheVerdict() {
+        Board board = new Board("8/6P1/8/8/8/8/2K5/k7 w - - 0 1");
+        int from = Position.square(2, 7), to = Position.square(1, 7);
+        Piece pawn = board.getPiece(2, 7);
+        board.play(moveGenerator.legalMove(board.getPosition(), board.getAttackMap(), from, to)); // a queen until the player picks
+        assertTrue(moveGenerator.isStalemate(board.getPosition()));
+        board.promote(pawn, PieceModel.ROOK, R.drawable.rookwhite);
+        assertEquals(PieceModel.ROOK, board.getPosition().modelAt(to));
+        assertNotEquals(0L, board.getAttackMap().kingEscapes(board.getPosition(), Player.BLACK));
+        assertFalse(moveGenerator.isStalemate(board.getPosition()));
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.chess.benchmark;
+
+import com.example.chess.engine.Move;
+import com.example.chess.engine.MoveGenerator;
+import com.example.chess.engine.Position;
+import com.example.chess.engine.TranspositionTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The checks ChessView runs after every move: is the king checked, checkmated or stalemated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckDetectionBenchmark {
+    private MoveGenerator moveGenerator;
+    private TranspositionTable cache;
+    private Position[] positions, mates, stalemates;
+
+    @Setup
+    public void setUp() {
+        moveGenerator = new MoveGenerator();
+        cache = new TranspositionTable(1);
+        positions = Corpus.positions();
+        mates = Corpus.mates();
+        stalemates = Corpus.stalemates();
+    }
+
+    @Benchmark
+    public int kingCheck() {
+        int checks = 0;
+        for (Position position : positions) {
+            if (moveGenerator.isInCheck(position, position.getSideToMove()))
+                checks++;
+        }
+        return checks;
+    }
+
+    @Benchmark
+    public int kingCheckMated() {
+        int mated = 0;
+        for (Position position : mates) {
+            if (moveGenerator.isCheckmate(position))
+                mated++;
+        }
+        return mated;
+    }
+
+    @Benchmark
+    public int kingStalemate() {
+        int stalemated = 0;
+        for (Position position : stalemates) {
+            if (moveGenerator.isStalemate(position))
+                stalemated++;
+        }
+        for (Position position : positions) {
+            if (moveGenerator.isStalemate(position))
+                stalemated++;
+        }
+        return stalemated;
+    }
+
+    /**
+     * Stalemate verdicts of positions seen before, answered by the cache as ChessView does.
+     */
+    @Benchmark
+    public int kingStalemateCached() {
+        int stalemated = 0;
+        for (Position position : stalemates) {
+            if (!moveGenerator.isInCheck(position, position.getSideToMove()) && !hasLegalMove(position))
+                stalemated++;
+        }
+        for (Position position : positions) {
+            if (!moveGenerator.isInCheck(position, position.getSideToMove()) && !hasLegalMove(position))
+                stalemated++;
+        }
+        return stalemated;
+    }
+
+    private boolean hasLegalMove(Position position) {
+        long data = cache.probe(position.getKey());
+        if (data != TranspositionTable.MISS)
+            return TranspositionTable.move(data) != Move.NONE;
+        int move = moveGenerator.firstLegalMove(position);
+        cache.store(position.getKey(), move, 0, 0, TranspositionTable.EXACT);
+        return move != Move.NONE;
+    }
+}
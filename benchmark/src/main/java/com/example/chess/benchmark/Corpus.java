@@ -0,0 +1,119 @@
+package com.example.chess.benchmark;
+
+import com.example.chess.engine.Fen;
+import com.example.chess.engine.Move;
+import com.example.chess.engine.MoveGenerator;
+import com.example.chess.engine.Position;
+
+/**
+ * Fixed positions & games the benchmarks run over, so numbers are comparable between runs.
+ */
+public final class Corpus {
+    /**
+     * Middlegame & endgame positions.
+     */
+    private static final String[] POSITIONS = {
+            Fen.INITIAL,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r1bqkbnr/pppp1ppp/2n5/4p3/2B1P3/5Q2/PPPP1PPP/RNB1K1NR w KQkq - 2 3",
+    };
+
+    /**
+     * Checkmated positions, the player to move has lost.
+     */
+    private static final String[] MATES = {
+            "r1bqkb1r/pppp1Qpp/2n2n2/4p3/2B1P3/8/PPPP1PPP/RNB1K1NR b KQkq - 0 4",
+            "rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3",
+            "6k1/5ppp/8/8/8/8/5PPP/3r2K1 w - - 0 1",
+    };
+
+    /**
+     * Stalemated positions, the player to move can't move.
+     */
+    private static final String[] STALEMATES = {
+            "k7/8/1Q6/8/8/8/8/7K b - - 0 1",
+            "7k/5Q2/6K1/8/8/8/8/8 b - - 0 1",
+            "8/8/8/8/8/6k1/5q2/7K w - - 0 1",
+    };
+
+    /**
+     * Full games from the initial position, moves as from & to squares.
+     */
+    private static final String[] GAMES = {
+            // Morphy - Duke of Brunswick & Count Isouard, Paris 1858
+            "e2e4 e7e5 g1f3 d7d6 d2d4 c8g4 d4e5 g4f3 d1f3 d6e5 f1c4 g8f6 f3b3 d8e7 b1c3 c7c6 c1g5 b7b5 c3b5 c6b5 "
+                    + "c4b5 b8d7 e1c1 a8d8 d1d7 d8d7 h1d1 e7e6 b5d7 f6d7 b3b8 d7b8 d1d8",
+            // Anderssen - Kieseritzky, London 1851
+            "e2e4 e7e5 f2f4 e5f4 f1c4 d8h4 e1f1 b7b5 c4b5 g8f6 g1f3 h4h6 d2d3 f6h5 f3h4 h6g5 h4f5 c7c6 g2g4 h5f6 "
+                    + "h1g1 c6b5 h2h4 g5g6 h4h5 g6g5 d1f3 f6g8 c1f4 g5f6 b1c3 f8c5 c3d5 f6b2 f4d6 c5g1 e4e5 b2a1 f1e2 b8a6 "
+                    + "f5g7 e8d8 f3f6 g8f6 d6e7",
+            // en passant & castles on both sides
+            "e2e4 d7d5 e4e5 f7f5 e5f6 g8f6 g1f3 b8c6 f1b5 c8d7 e1g1 e7e6 d2d4 d8e7 b1c3 e8c8 b5c6 d7c6 f3e5 g7g5 "
+                    + "e5c6 b7c6 c1g5 h7h5 g5f6 e7f6 d1e2 h5h4 e2a6 c8b8 a6c6 h4h3 g2h3 h8h3 c6b5 b8c8 b5c6 c8b8",
+            // Fool's mate
+            "f2f3 e7e5 g2g4 d8h4",
+    };
+
+    private Corpus() {
+    }
+
+    public static Position[] positions() {
+        return positions(POSITIONS);
+    }
+
+    public static Position[] mates() {
+        return positions(MATES);
+    }
+
+    public static Position[] stalemates() {
+        return positions(STALEMATES);
+    }
+
+    /**
+     * Returns every game as the list of its moves, checked against the rules.
+     */
+    public static int[][] games() {
+        MoveGenerator moveGenerator = new MoveGenerator();
+        int[][] games = new int[GAMES.length][];
+        for (int i = 0; i < GAMES.length; i++) {
+            String[] squares = GAMES[i].split(" ");
+            Position position = initial();
+            games[i] = new int[squares.length];
+            for (int j = 0; j < squares.length; j++) {
+                int move = moveGenerator.legalMove(position, square(squares[j], 0), square(squares[j], 2));
+                if (move == Move.NONE)
+                    throw new IllegalStateException("Illegal move " + squares[j] + " in game " + i);
+                position.play(move);
+                games[i][j] = move;
+            }
+        }
+        return games;
+    }
+
+    public static Position initial() {
+        Position position = new Position();
+        Fen.parse(Fen.INITIAL, position);
+        return position;
+    }
+
+    /**
+     * Square of a coordinate like e2 starting at index.
+     */
+    private static int square(String coordinate, int index) {
+        int column = coordinate.charAt(index) - 'a' + 1;
+        int row = 9 - (coordinate.charAt(index + 1) - '0');
+        return Position.square(row, column);
+    }
+
+    private static Position[] positions(String[] fens) {
+        Position[] positions = new Position[fens.length];
+        for (int i = 0; i < fens.length; i++) {
+            positions[i] = new Position();
+            Fen.parse(fens[i], positions[i]);
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.chess.benchmark;
+
+import com.example.chess.Player;
+import com.example.chess.engine.AttackMap;
+import com.example.chess.engine.Move;
+import com.example.chess.engine.MoveGenerator;
+import com.example.chess.engine.Position;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the corpus games doing what ChessView does on every move: check the move is legal,
+ * play it, then look for check, checkmate & stalemate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameReplayBenchmark {
+    private MoveGenerator moveGenerator;
+    private AttackMap attackMap;
+    private Position initial, position;
+    private int[][] games;
+
+    @Setup
+    public void setUp() {
+        moveGenerator = new MoveGenerator();
+        attackMap = new AttackMap();
+        initial = Corpus.initial();
+        position = new Position();
+        games = Corpus.games();
+    }
+
+    @Benchmark
+    public int replayGames() {
+        int checks = 0, endings = 0;
+        for (int[] game : games) {
+            position.copyFrom(initial);
+            for (int move : game) {
+                if (moveGenerator.legalMove(position, Move.from(move), Move.to(move)) == Move.NONE)
+                    throw new IllegalStateException("Illegal move in the corpus");
+                position.play(move);
+                if (moveGenerator.isInCheck(position, position.getSideToMove()))
+                    checks++;
+                if (!moveGenerator.hasLegalMove(position))
+                    endings++;
+            }
+        }
+        return checks + endings;
+    }
+
+    /**
+     * Same replay keeping an attack map across the moves, as the board does.
+     */
+    @Benchmark
+    public int replayGamesAttackMap() {
+        int checks = 0, endings = 0;
+        for (int[] game : games) {
+            position.copyFrom(initial);
+            attackMap.reset(position);
+            for (int move : game) {
+                if (moveGenerator.legalMove(position, attackMap, Move.from(move), Move.to(move)) == Move.NONE)
+                    throw new IllegalStateException("Illegal move in the corpus");
+                attackMap.play(position, move);
+                Player player = position.getSideToMove();
+                long checkers = attackMap.checkers(position, player);
+                if (checkers != 0L)
+                    checks++;
+                if (attackMap.kingEscapes(position, player) == 0L && (Long.bitCount(checkers) > 1 || !moveGenerator.hasLegalMove(position)))
+                    endings++;
+            }
+        }
+        return checks + endings;
+    }
+}
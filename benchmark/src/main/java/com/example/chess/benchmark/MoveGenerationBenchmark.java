@@ -0,0 +1,103 @@
+package com.example.chess.benchmark;
+
+import com.example.chess.engine.AttackMap;
+import com.example.chess.engine.Move;
+import com.example.chess.engine.MoveGenerator;
+import com.example.chess.engine.MoveList;
+import com.example.chess.engine.Position;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Legal move generation over the corpus positions & perft from the initial position, and the
+ * legality check ChessView does when a piece is dropped on a square.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark {
+    private MoveGenerator moveGenerator;
+    private MoveList moves;
+    private Position[] positions;
+    private AttackMap[] attackMaps;
+    private Position initial;
+
+    @Setup
+    public void setUp() {
+        moveGenerator = new MoveGenerator();
+        moves = new MoveList();
+        positions = Corpus.positions();
+        attackMaps = new AttackMap[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            attackMaps[i] = new AttackMap();
+            attackMaps[i].reset(positions[i]);
+        }
+        initial = Corpus.initial();
+    }
+
+    @Benchmark
+    public int generateLegalMoves() {
+        int count = 0;
+        for (Position position : positions) {
+            moveGenerator.generateLegalMoves(position, moves);
+            count += moves.size();
+        }
+        return count;
+    }
+
+    /**
+     * Drops every piece of the player to move on every square.
+     */
+    @Benchmark
+    public int dropPieces() {
+        int legal = 0;
+        for (Position position : positions) {
+            for (long pieces = position.occupancy(position.getSideToMove()); pieces != 0L; pieces &= pieces - 1) {
+                int from = Long.numberOfTrailingZeros(pieces);
+                for (int to = 0; to < 64; to++) {
+                    if (moveGenerator.legalMove(position, from, to) != Move.NONE)
+                        legal++;
+                }
+            }
+        }
+        return legal;
+    }
+
+    /**
+     * Same drops answered with the attack map of each position.
+     */
+    @Benchmark
+    public int dropPiecesAttackMap() {
+        int legal = 0;
+        for (int i = 0; i < positions.length; i++) {
+            Position position = positions[i];
+            for (long pieces = position.occupancy(position.getSideToMove()); pieces != 0L; pieces &= pieces - 1) {
+                int from = Long.numberOfTrailingZeros(pieces);
+                for (int to = 0; to < 64; to++) {
+                    if (moveGenerator.legalMove(position, attackMaps[i], from, to) != Move.NONE)
+                        legal++;
+                }
+            }
+        }
+        return legal;
+    }
+
+    @Benchmark
+    public long perft3() {
+        return moveGenerator.perft(initial, 3);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.chess.benchmark;
+
+import com.example.chess.engine.Analysis;
+import com.example.chess.engine.Position;
+
+import java.util.Locale;
+
+/**
+ * Time to depth of the analysis search over the corpus positions with 1, 2, 4... threads up to
+ * the cores of the machine, and the speedup against 1 thread. Usage: SpeedupReport [depth] [threads]
+ */
+public final class SpeedupReport {
+    private static final int MEGABYTES = 64;
+    private static final long NO_TIME_LIMIT = 24 * 60 * 60 * 1000L; // a day
+
+    private SpeedupReport() {
+    }
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Position[] positions = Corpus.positions();
+        System.out.printf(Locale.ROOT, "Depth %d over %d positions, %d cores%n", depth, positions.length, Runtime.getRuntime().availableProcessors());
+        System.out.printf(Locale.ROOT, "%8s %12s %10s %14s%n", "threads", "time (ms)", "speedup", "nodes/s");
+        timeToDepth(new Analysis(1, MEGABYTES), positions, depth - 1); // warm up the JIT
+        double single = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            Analysis analysis = new Analysis(threads, MEGABYTES);
+            long nodes = 0, nanos = 0;
+            for (Position position : positions) {
+                analysis.clear();
+                long start = System.nanoTime();
+                analysis.bestMove(position, NO_TIME_LIMIT, depth);
+                nanos += System.nanoTime() - start;
+                nodes += analysis.getNodes();
+            }
+            double millis = nanos / 1e6;
+            if (threads == 1)
+                single = millis;
+            System.out.printf(Locale.ROOT, "%8d %12.1f %10.2f %14.0f%n", threads, millis, single / millis, nodes / (nanos / 1e9));
+            if (threads >= maxThreads)
+                break;
+        }
+    }
+
+    private static void timeToDepth(Analysis analysis, Position[] positions, int depth) {
+        for (Position position : positions) {
+            analysis.clear();
+            analysis.bestMove(position, NO_TIME_LIMIT, depth);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.chess.engine;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Best move search on several threads sharing one transposition table (Lazy SMP): every thread
+ * searches the same root, the helpers one ply deeper every other thread, so the entries they
+ * leave in the table let the main thread cut its search sooner. The main thread's move is the
+ * answer, the helpers stop when it's done. The helpers run on threads of the analysis, reused
+ * from one analysis to the next and ended after a while idle. One analysis runs at a time, stop
+ * can be called from any thread.
+ */
+public class Analysis {
+    private final TranspositionTable table;
+    private final Search[] searches;
+    private final ThreadPoolExecutor helpers;
+    private final Future<?>[] running;
+    private volatile boolean finished; // the main thread is done, so are the helpers
+
+    /**
+     * Creates an analysis on threads threads sharing a table of megabytes.
+     */
+    public Analysis(int threads, int megabytes) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least 1 thread");
+        table = new TranspositionTable(megabytes);
+        searches = new Search[threads];
+        for (int i = 0; i < threads; i++)
+            searches[i] = new Search(table);
+        AtomicInteger count = new AtomicInteger();
+        helpers = new ThreadPoolExecutor(Math.max(threads - 1, 1), Math.max(threads - 1, 1), 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "analysis-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        helpers.allowCoreThreadTimeOut(true);
+        running = new Future<?>[threads - 1];
+    }
+
+    /**
+     * Searches the position for at most millis milliseconds or maxDepth plies and returns the
+     * best move found, or Move.NONE if the player to move can't move.
+     */
+    public synchronized int bestMove(Position position, long millis, int maxDepth) {
+        return bestMove(position, millis, maxDepth, () -> false);
+    }
+
+    /**
+     * Same analysis returning early once cancelled is true, even if it was before it started.
+     */
+    public synchronized int bestMove(Position position, long millis, int maxDepth, BooleanSupplier cancelled) {
+        finished = false;
+        BooleanSupplier helperCancelled = () -> finished || cancelled.getAsBoolean(); // even if the helper starts late
+        for (int i = 0; i < running.length; i++) {
+            Search helper = searches[i + 1];
+            int depthOffset = (i + 1) % 2;
+            running[i] = helpers.submit(() -> helper.bestMove(position, millis, maxDepth + depthOffset, depthOffset, helperCancelled));
+        }
+        int move = searches[0].bestMove(position, millis, maxDepth, cancelled);
+        finished = true;
+        try {
+            for (Future<?> helper : running)
+                helper.get();
+        } catch (InterruptedException e) {
+            stop();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Analysis helper failed", e.getCause());
+        }
+        return move;
+    }
+
+    /**
+     * Makes the running analysis return as soon as possible with what it found so far.
+     */
+    public void stop() {
+        for (Search search : searches)
+            search.stop();
+    }
+
+    /**
+     * Forgets the positions searched before, to time a search from scratch.
+     */
+    public void clear() {
+        table.clear();
+    }
+
+    public int getThreads() {
+        return searches.length;
+    }
+
+    /**
+     * Positions visited by all the threads in the last analysis.
+     */
+    public long getNodes() {
+        long nodes = 0;
+        for (Search search : searches)
+            nodes += search.getNodes();
+        return nodes;
+    }
+
+    /**
+     * Depth the main thread finished in the last analysis.
+     */
+    public int getDepth() {
+        return searches[0].getDepth();
+    }
+
+    /**
+     * Score of the best move, from the player to move.
+     */
+    public int getScore() {
+        return searches[0].getScore();
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.chess.engine;
+
+import com.example.chess.PieceModel;
+import com.example.chess.Player;
+
+import java.util.Arrays;
+
+/**
+ * Squares every piece attacks and how many pieces of each player attack every square, kept up to
+ * date move by move: only the pieces on the squares a move changes and the sliders looking at
+ * those squares are looked at again, so checks & king escapes are answered by lookup.
+ * Pinned pieces are found the first time they're asked for after a move and kept until the next.
+ */
+public class AttackMap {
+    private static final Player[] PLAYERS = Player.values();
+
+    private final long[] attacksFrom = new long[64]; // squares the piece on each square attacks
+    private final int[][] attackers = new int[PLAYERS.length][64];
+    private final long[] attacked = new long[PLAYERS.length];
+    private final long[] pinned = new long[PLAYERS.length];
+    private final long[] pinRays = new long[64]; // squares the pinned piece on each square can move to
+    private boolean pinsFound;
+
+    public AttackMap() {
+        Arrays.fill(pinRays, -1L);
+    }
+
+    /**
+     * Computes the map again from scratch for the position.
+     */
+    public void reset(Position position) {
+        for (int square = 0; square < 64; square++)
+            attacksFrom[square] = 0L;
+        for (Player player : PLAYERS) {
+            for (int square = 0; square < 64; square++)
+                attackers[player.ordinal()][square] = 0;
+            attacked[player.ordinal()] = 0L;
+        }
+        for (long pieces = position.occupied(); pieces != 0L; pieces &= pieces - 1)
+            add(position, Long.numberOfTrailingZeros(pieces));
+        pinsFound = false;
+    }
+
+    /**
+     * Plays a legal move on the position and updates the map for it.
+     */
+    public void play(Position position, int move) {
+        long changed = changedSquares(move);
+        long before = changed | sliders(position, changed);
+        for (long squares = before; squares != 0L; squares &= squares - 1)
+            remove(position, Long.numberOfTrailingZeros(squares));
+        position.play(move);
+        long after = sliders(position, changed) & ~before; // sliders a piece stopped blocking
+        for (long squares = after; squares != 0L; squares &= squares - 1)
+            remove(position, Long.numberOfTrailingZeros(squares));
+        for (long squares = before | after; squares != 0L; squares &= squares - 1)
+            add(position, Long.numberOfTrailingZeros(squares));
+        pinsFound = false;
+    }
+
+    /**
+     * Updates the piece on the square after its model changed, like a crowned pawn.
+     */
+    public void refresh(Position position, int square) {
+        remove(position, square);
+        add(position, square);
+        pinsFound = false;
+    }
+
+    /**
+     * Squares attacked by any piece of the player.
+     */
+    public long attacks(Player player) {
+        return attacked[player.ordinal()];
+    }
+
+    public boolean isAttacked(int square, Player player) {
+        return (attacked[player.ordinal()] & Position.mask(square)) != 0L;
+    }
+
+    public boolean isInCheck(Position position, Player player) {
+        int king = position.kingSquare(player);
+        return king != Position.NO_SQUARE && isAttacked(king, Position.opponent(player));
+    }
+
+    /**
+     * Squares of the enemy pieces checking the king of the player.
+     */
+    public long checkers(Position position, Player player) {
+        int king = position.kingSquare(player);
+        if (king == Position.NO_SQUARE || !isAttacked(king, Position.opponent(player)))
+            return 0L;
+        long checkers = 0L;
+        for (long pieces = position.occupancy(Position.opponent(player)); pieces != 0L; pieces &= pieces - 1) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            if ((attacksFrom[square] & Position.mask(king)) != 0L)
+                checkers |= Position.mask(square);
+        }
+        return checkers;
+    }
+
+    /**
+     * Squares the king of the player can step to without being attacked, castles aside.
+     * A checking slider also attacks the squares behind the king on its line.
+     */
+    public long kingEscapes(Position position, Player player) {
+        int king = position.kingSquare(player);
+        if (king == Position.NO_SQUARE)
+            return 0L;
+        long escapes = Attacks.king(king) & ~position.occupancy(player) & ~attacks(Position.opponent(player));
+        long occupied = position.occupied() ^ Position.mask(king);
+        for (long checkers = checkers(position, player); checkers != 0L && escapes != 0L; checkers &= checkers - 1) {
+            int square = Long.numberOfTrailingZeros(checkers);
+            PieceModel model = position.modelAt(square);
+            if (model == PieceModel.ROOK || model == PieceModel.BISHOP || model == PieceModel.QUEEN)
+                escapes &= ~attacks(model, position.playerAt(square), square, occupied);
+        }
+        return escapes;
+    }
+
+    /**
+     * Squares of the pieces of the player that can't leave the line between their king and an
+     * enemy slider.
+     */
+    public long pinned(Position position, Player player) {
+        findPins(position);
+        return pinned[player.ordinal()];
+    }
+
+    /**
+     * Squares the piece on the square can move to without uncovering its king: the line to the
+     * pinning slider, the slider included, or every square if the piece isn't pinned.
+     */
+    public long pinRay(Position position, int square) {
+        findPins(position);
+        return pinRays[square];
+    }
+
+    private void findPins(Position position) {
+        if (pinsFound)
+            return;
+        long occupied = position.occupied();
+        for (Player player : PLAYERS) {
+            for (long squares = pinned[player.ordinal()]; squares != 0L; squares &= squares - 1) // last pins
+                pinRays[Long.numberOfTrailingZeros(squares)] = -1L;
+            pinned[player.ordinal()] = 0L;
+            int king = position.kingSquare(player);
+            if (king == Position.NO_SQUARE)
+                continue;
+            Player enemy = Position.opponent(player);
+            long queens = position.pieces(enemy, PieceModel.QUEEN);
+            long sliders = ((position.pieces(enemy, PieceModel.ROOK) | queens) & Attacks.rookRays(king))
+                    | ((position.pieces(enemy, PieceModel.BISHOP) | queens) & Attacks.bishopRays(king));
+            for (; sliders != 0L; sliders &= sliders - 1) {
+                int slider = Long.numberOfTrailingZeros(sliders);
+                long between = Attacks.between(king, slider);
+                long blockers = between & occupied;
+                if (Long.bitCount(blockers) == 1 && (blockers & position.occupancy(player)) != 0L) {
+                    pinned[player.ordinal()] |= blockers;
+                    pinRays[Long.numberOfTrailingZeros(blockers)] = between | Position.mask(slider);
+                }
+            }
+        }
+        pinsFound = true;
+    }
+
+    /**
+     * Squares whose piece changes with the move: from & to, the pawn taken en passant and the rook
+     * of a castle.
+     */
+    private static long changedSquares(int move) {
+        int from = Move.from(move), to = Move.to(move);
+        long changed = Position.mask(from) | Position.mask(to);
+        if (Move.isEnPassant(move))
+            changed |= Position.mask(Position.square(Position.row(from), Position.column(to)));
+        if (Move.isCastle(move)) {
+            int row = Position.row(to);
+            if (Position.column(to) == 7)
+                changed |= Position.mask(Position.square(row, 8)) | Position.mask(Position.square(row, 6));
+            else
+                changed |= Position.mask(Position.square(row, 1)) | Position.mask(Position.square(row, 4));
+        }
+        return changed;
+    }
+
+    /**
+     * Squares of the rooks, bishops & queens of both players attacking any of the squares.
+     */
+    private static long sliders(Position position, long squares) {
+        long rooks = 0L, bishops = 0L;
+        for (Player player : PLAYERS) {
+            long queens = position.pieces(player, PieceModel.QUEEN);
+            rooks |= position.pieces(player, PieceModel.ROOK) | queens;
+            bishops |= position.pieces(player, PieceModel.BISHOP) | queens;
+        }
+        long occupied = position.occupied(), sliders = 0L;
+        for (; squares != 0L; squares &= squares - 1) {
+            int square = Long.numberOfTrailingZeros(squares);
+            sliders |= (Attacks.rook(square, occupied) & rooks) | (Attacks.bishop(square, occupied) & bishops);
+        }
+        return sliders;
+    }
+
+    /**
+     * Adds the attacks of the piece on the square, if any.
+     */
+    private void add(Position position, int square) {
+        Player player = position.playerAt(square);
+        long attacks = player == null ? 0L : attacks(position.modelAt(square), player, square, position.occupied());
+        attacksFrom[square] = attacks;
+        if (player == null)
+            return;
+        int[] count = attackers[player.ordinal()];
+        for (; attacks != 0L; attacks &= attacks - 1) {
+            int target = Long.numberOfTrailingZeros(attacks);
+            if (count[target]++ == 0)
+                attacked[player.ordinal()] |= Position.mask(target);
+        }
+    }
+
+    /**
+     * Takes out the attacks of the piece on the square, if any.
+     */
+    private void remove(Position position, int square) {
+        long attacks = attacksFrom[square];
+        attacksFrom[square] = 0L;
+        Player player = position.playerAt(square);
+        if (player == null)
+            return;
+        int[] count = attackers[player.ordinal()];
+        for (; attacks != 0L; attacks &= attacks - 1) {
+            int target = Long.numberOfTrailingZeros(attacks);
+            if (--count[target] == 0)
+                attacked[player.ordinal()] &= ~Position.mask(target);
+        }
+    }
+
+    private static long attacks(PieceModel model, Player player, int square, long occupied) {
+        switch (model) {
+            case PAWN:
+                return Attacks.pawn(player, square);
+            case KNIGHT:
+                return Attacks.knight(square);
+            case BISHOP:
+                return Attacks.bishop(square, occupied);
+            case ROOK:
+                return Attacks.rook(square, occupied);
+            case QUEEN:
+                return Attacks.queen(square, occupied);
+            default:
+                return Attacks.king(square);
+        }
+    }
+}
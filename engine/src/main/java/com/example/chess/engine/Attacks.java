@@ -0,0 +1,147 @@
+package com.example.chess.engine;
+
+import com.example.chess.Player;
+
+/**
+ * Attack masks computed once when the class loads: the squares a knight, king or pawn attacks from
+ * every square, the rays in each direction and the squares between any two squares on a line.
+ */
+public final class Attacks {
+    public static final int UP = 0; // towards row 1
+    public static final int DOWN = 1;
+    public static final int LEFT = 2; // towards column 1
+    public static final int RIGHT = 3;
+    public static final int UP_LEFT = 4;
+    public static final int UP_RIGHT = 5;
+    public static final int DOWN_LEFT = 6;
+    public static final int DOWN_RIGHT = 7;
+
+    private static final int[] ROW_STEPS = {-1, 1, 0, 0, -1, -1, 1, 1};
+    private static final int[] COLUMN_STEPS = {0, 0, -1, 1, -1, 1, -1, 1};
+    private static final int[][] KNIGHT_STEPS = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+
+    private static final long[] KNIGHT = new long[64];
+    private static final long[] KING = new long[64];
+    private static final long[][] PAWN = new long[Player.values().length][64];
+    private static final long[][] RAYS = new long[8][64];
+    private static final long[] ROOK_RAYS = new long[64];
+    private static final long[] BISHOP_RAYS = new long[64];
+    private static final long[][] BETWEEN = new long[64][64];
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            int row = Position.row(square), column = Position.column(square);
+            for (int[] step : KNIGHT_STEPS)
+                KNIGHT[square] |= mask(row + step[0], column + step[1]);
+            for (int direction = 0; direction < 8; direction++) {
+                KING[square] |= mask(row + ROW_STEPS[direction], column + COLUMN_STEPS[direction]);
+                long between = 0L;
+                for (int r = row + ROW_STEPS[direction], c = column + COLUMN_STEPS[direction]; r >= 1 && r <= 8 && c >= 1 && c <= 8; r += ROW_STEPS[direction], c += COLUMN_STEPS[direction]) {
+                    int to = Position.square(r, c);
+                    RAYS[direction][square] |= Position.mask(to);
+                    BETWEEN[square][to] = between;
+                    between |= Position.mask(to);
+                }
+            }
+            ROOK_RAYS[square] = RAYS[UP][square] | RAYS[DOWN][square] | RAYS[LEFT][square] | RAYS[RIGHT][square];
+            BISHOP_RAYS[square] = RAYS[UP_LEFT][square] | RAYS[UP_RIGHT][square] | RAYS[DOWN_LEFT][square] | RAYS[DOWN_RIGHT][square];
+            PAWN[Player.WHITE.ordinal()][square] = mask(row - 1, column - 1) | mask(row - 1, column + 1);
+            PAWN[Player.BLACK.ordinal()][square] = mask(row + 1, column - 1) | mask(row + 1, column + 1);
+        }
+    }
+
+    private Attacks() {
+    }
+
+    public static long knight(int square) {
+        return KNIGHT[square];
+    }
+
+    public static long king(int square) {
+        return KING[square];
+    }
+
+    /**
+     * Squares a pawn of the player eats on.
+     */
+    public static long pawn(Player player, int square) {
+        return PAWN[player.ordinal()][square];
+    }
+
+    /**
+     * Squares from square to the edge of the board in the direction, without square.
+     */
+    public static long ray(int direction, int square) {
+        return RAYS[direction][square];
+    }
+
+    /**
+     * Squares a rook would attack from square on an empty board.
+     */
+    public static long rookRays(int square) {
+        return ROOK_RAYS[square];
+    }
+
+    /**
+     * Squares a bishop would attack from square on an empty board.
+     */
+    public static long bishopRays(int square) {
+        return BISHOP_RAYS[square];
+    }
+
+    /**
+     * Squares strictly between from & to if they share a row, column or diagonal, else 0.
+     */
+    public static long between(int from, int to) {
+        return BETWEEN[from][to];
+    }
+
+    /**
+     * Squares a rook attacks from square, up to and including the first occupied one in each direction.
+     */
+    public static long rook(int square, long occupied) {
+        return Magics.rook(square, occupied);
+    }
+
+    /**
+     * Squares a bishop attacks from square, up to and including the first occupied one in each direction.
+     */
+    public static long bishop(int square, long occupied) {
+        return Magics.bishop(square, occupied);
+    }
+
+    public static long queen(int square, long occupied) {
+        return Magics.rook(square, occupied) | Magics.bishop(square, occupied);
+    }
+
+    /**
+     * Rook attacks cutting each ray at its first blocker, used to fill the magic tables.
+     */
+    static long rayRook(int square, long occupied) {
+        return slide(UP, square, occupied) | slide(DOWN, square, occupied) | slide(LEFT, square, occupied) | slide(RIGHT, square, occupied);
+    }
+
+    /**
+     * Bishop attacks cutting each ray at its first blocker, used to fill the magic tables.
+     */
+    static long rayBishop(int square, long occupied) {
+        return slide(UP_LEFT, square, occupied) | slide(UP_RIGHT, square, occupied) | slide(DOWN_LEFT, square, occupied) | slide(DOWN_RIGHT, square, occupied);
+    }
+
+    /**
+     * Ray in the direction cut after the first occupied square, which is included.
+     */
+    private static long slide(int direction, int square, long occupied) {
+        long ray = RAYS[direction][square];
+        long blockers = ray & occupied;
+        if (blockers == 0L)
+            return ray;
+        boolean increasing = direction == DOWN || direction == RIGHT || direction == DOWN_LEFT || direction == DOWN_RIGHT;
+        int blocker = increasing ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers);
+        return ray ^ RAYS[direction][blocker];
+    }
+
+    private static long mask(int row, int column) {
+        return row >= 1 && row <= 8 && column >= 1 && column <= 8 ? Position.mask(Position.square(row, column)) : 0L;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.chess.engine;
+
+import com.example.chess.Player;
+
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+/**
+ * Time control of a game on a monotonic clock: a player's time runs only while it's their move
+ * and is charged to the nanosecond when they move. Fischer adds the increment after every move,
+ * Bronstein gives back the time spent on the move up to the increment.
+ */
+public class ChessClock {
+    public enum Mode {
+        SUDDEN_DEATH, FISCHER, BRONSTEIN
+    }
+
+    private static final long SECOND = 1000000000L;
+    private static final long TENTH = SECOND / 10;
+    private static final long TENTHS_UNDER = 10 * SECOND; // tenths are shown in the last 10 seconds
+
+    private final LongSupplier now;
+    private final Mode mode;
+    private final long increment;
+    private final long[] remaining = new long[2], lastMove = new long[2];
+    private Player running;
+    private long turnStart;
+
+    /**
+     * Gives both players baseMillis, now reads nanoseconds from a clock that never goes back like
+     * SystemClock.elapsedRealtimeNanos.
+     */
+    public ChessClock(long baseMillis, long incrementMillis, Mode mode, LongSupplier now) {
+        this.now = now;
+        this.mode = mode;
+        this.increment = mode == Mode.SUDDEN_DEATH ? 0 : incrementMillis * 1000000L;
+        remaining[0] = remaining[1] = baseMillis * 1000000L;
+    }
+
+    /**
+     * Runs the player's clock, like at the start of the game or when it goes on after a pause.
+     */
+    public void start(Player player) {
+        stop();
+        running = player;
+        turnStart = now.getAsLong();
+    }
+
+    /**
+     * The running player moved: charges the time spent, adds the increment unless the flag fell
+     * and starts the opponent's clock. Returns the nanoseconds the move took.
+     */
+    public long press() {
+        if (running == null)
+            throw new IllegalStateException("No clock is running");
+        Player mover = running;
+        long spent = charge();
+        lastMove[mover.ordinal()] = spent;
+        if (remaining[mover.ordinal()] > 0) {
+            if (mode == Mode.FISCHER)
+                remaining[mover.ordinal()] += increment;
+            else if (mode == Mode.BRONSTEIN)
+                remaining[mover.ordinal()] += Math.min(spent, increment);
+        }
+        running = mover == Player.WHITE ? Player.BLACK : Player.WHITE;
+        return spent;
+    }
+
+    /**
+     * Stops the running clock charging the time spent so far, like when the game ends.
+     */
+    public void stop() {
+        if (running != null) {
+            charge();
+            running = null;
+        }
+    }
+
+    /**
+     * Sets the time both players have left, like when a saved game goes on.
+     */
+    public void restore(long whiteNanos, long blackNanos) {
+        remaining[Player.WHITE.ordinal()] = whiteNanos;
+        remaining[Player.BLACK.ordinal()] = blackNanos;
+        turnStart = now.getAsLong();
+    }
+
+    /**
+     * Player whose time is running, null if stopped.
+     */
+    public Player getRunning() {
+        return running;
+    }
+
+    /**
+     * Nanoseconds the player has left right now, 0 or less once the flag fell.
+     */
+    public long remainingNanos(Player player) {
+        long left = remaining[player.ordinal()];
+        return player == running ? left - (now.getAsLong() - turnStart) : left;
+    }
+
+    /**
+     * Nanoseconds the last move of the player took.
+     */
+    public long lastMoveNanos(Player player) {
+        return lastMove[player.ordinal()];
+    }
+
+    public boolean isFlagged(Player player) {
+        return remainingNanos(player) <= 0;
+    }
+
+    /**
+     * Nanoseconds until the time shown for the player changes, so the display is only redrawn
+     * then. Long.MAX_VALUE if it won't change.
+     */
+    public long nanosToNextChange(Player player) {
+        long left = remainingNanos(player);
+        if (player != running || left <= 0)
+            return Long.MAX_VALUE;
+        return left % (left < TENTHS_UNDER ? TENTH : SECOND) + 1;
+    }
+
+    /**
+     * Time as shown on the clock: minutes & seconds, plus tenths in the last 10 seconds.
+     */
+    public static String format(long nanos) {
+        long left = Math.max(nanos, 0);
+        long seconds = left / SECOND;
+        if (left < TENTHS_UNDER)
+            return String.format(Locale.ROOT, "[ 0:%02d.%d ]", seconds, left % SECOND / TENTH);
+        return String.format(Locale.ROOT, "[ %d:%02d ]", seconds / 60, seconds % 60);
+    }
+
+    private long charge() {
+        long time = now.getAsLong(), spent = time - turnStart;
+        remaining[running.ordinal()] -= spent;
+        turnStart = time;
+        return spent;
+    }
+}
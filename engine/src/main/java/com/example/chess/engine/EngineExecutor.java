@@ -0,0 +1,186 @@
+package com.example.chess.engine;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs engine work off the caller's thread on a fixed number of workers. Interactive jobs go
+ * before background ones, jobs of the same priority in the order they came. Results are handed
+ * to the callback through the delivery executor (the UI thread on Android), unless the job was
+ * cancelled first, so a result for a position that changed meanwhile is never delivered. A task
+ * that fails delivers nothing, the failure goes to the failure callback.
+ */
+public class EngineExecutor {
+    public enum Priority {
+        INTERACTIVE, // someone is waiting for it: a move check, the computer's move, a hint
+        BACKGROUND // analysis nobody is looking at yet
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final Executor delivery;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Set<Job<?>> jobs = ConcurrentHashMap.newKeySet(); // not delivered nor dropped yet
+    private volatile Callback<Exception> onFailure = Throwable::printStackTrace;
+
+    /**
+     * Creates an executor with threads workers handing results to delivery.
+     */
+    public EngineExecutor(int threads, Executor delivery) {
+        AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "engine-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.delivery = delivery;
+    }
+
+    /**
+     * Hands the failures of the tasks to callback through the delivery executor, instead of
+     * printing them.
+     */
+    public void setFailureCallback(Callback<Exception> callback) {
+        onFailure = callback;
+    }
+
+    /**
+     * Queues task, handing its result to callback. onCancel, if not null, is run when the job is
+     * cancelled, to make the task return early or not start; it must be safe to run before the
+     * task starts.
+     */
+    public <T> Job<T> submit(Priority priority, Callable<T> task, Runnable onCancel, Callback<T> callback) {
+        Job<T> job = new Job<>(this, priority, sequence.getAndIncrement(), task, onCancel, callback);
+        jobs.add(job);
+        pool.execute(job);
+        return job;
+    }
+
+    /**
+     * Checks a move of the piece in from to the square to on a copy of the position, the
+     * callback gets the move or Move.NONE.
+     */
+    public Job<Integer> legalMove(Position position, int from, int to, Callback<Integer> callback) {
+        Position copy = new Position();
+        copy.copyFrom(position);
+        return submit(Priority.INTERACTIVE, () -> new MoveGenerator().legalMove(copy, from, to), null, callback);
+    }
+
+    /**
+     * Searches a copy of the position for the best move, the callback gets it or Move.NONE.
+     */
+    public Job<Integer> bestMove(Search search, Position position, long millis, Callback<Integer> callback) {
+        Position copy = new Position();
+        copy.copyFrom(position);
+        AtomicBoolean cancelled = new AtomicBoolean(); // of this job only, the search is shared
+        return submit(Priority.INTERACTIVE, () -> search.bestMove(copy, millis, Search.MAX_PLY, cancelled::get), () -> cancelled.set(true), callback);
+    }
+
+    /**
+     * Analyses a copy of the position on the analysis threads, the callback gets the best move or
+     * Move.NONE. A hint is interactive, a deep analysis can run in the background.
+     */
+    public Job<Integer> analyse(Analysis analysis, Position position, long millis, int maxDepth, Priority priority, Callback<Integer> callback) {
+        Position copy = new Position();
+        copy.copyFrom(position);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        return submit(priority, () -> analysis.bestMove(copy, millis, maxDepth, cancelled::get), () -> cancelled.set(true), callback);
+    }
+
+    /**
+     * Cancels every job not delivered yet, like when a new move makes them useless.
+     */
+    public void cancelAll() {
+        for (Job<?> job : jobs)
+            job.cancel();
+    }
+
+    /**
+     * Cancels every job and stops the workers.
+     */
+    public void shutdown() {
+        cancelAll();
+        pool.shutdownNow();
+    }
+
+    /**
+     * A queued or running piece of work that can be cancelled until its result is delivered.
+     */
+    public static final class Job<T> implements Runnable, Comparable<Job<?>> {
+        private final EngineExecutor executor;
+        private final Priority priority;
+        private final long sequence;
+        private final Callable<T> task;
+        private final Runnable onCancel;
+        private final Callback<T> callback;
+        private volatile boolean cancelled, done;
+
+        private Job(EngineExecutor executor, Priority priority, long sequence, Callable<T> task, Runnable onCancel, Callback<T> callback) {
+            this.executor = executor;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+            this.onCancel = onCancel;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled)
+                return;
+            T result;
+            try {
+                result = task.call();
+            } catch (Exception e) {
+                done = true;
+                executor.jobs.remove(this);
+                executor.delivery.execute(() -> executor.onFailure.onResult(e));
+                return;
+            }
+            executor.delivery.execute(() -> { // still cancellable until then
+                if (!cancelled)
+                    callback.onResult(result);
+                done = true;
+                executor.jobs.remove(this);
+            });
+        }
+
+        public void cancel() {
+            if (cancelled || done)
+                return;
+            cancelled = true;
+            executor.jobs.remove(this);
+            if (onCancel != null)
+                onCancel.run();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Checks if the job won't run its callback anymore: it was delivered or cancelled.
+         */
+        public boolean isDone() {
+            return done || cancelled;
+        }
+
+        @Override
+        public int compareTo(Job<?> other) {
+            if (priority != other.priority)
+                return priority.compareTo(other.priority);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.chess.engine;
+
+import com.example.chess.PieceModel;
+import com.example.chess.Player;
+
+/**
+ * Static score of a position in centipawns from the side to move: material plus a bonus or
+ * malus for the square each piece stands on.
+ * See https://www.chessprogramming.org/Simplified_Evaluation_Function
+ */
+public final class Evaluation {
+    private static final int[] VALUES = {0, 900, 500, 320, 330, 100}; // in PieceModel order
+
+    // square bonus for white pieces, square 0 is a8 as in Position; black looks at square ^ 56
+    private static final int[][] SQUARES = {
+            { // king
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -20, -30, -30, -40, -40, -30, -30, -20,
+                    -10, -20, -20, -20, -20, -20, -20, -10,
+                    20, 20, 0, 0, 0, 0, 20, 20,
+                    20, 30, 10, 0, 0, 10, 30, 20},
+            { // queen
+                    -20, -10, -10, -5, -5, -10, -10, -20,
+                    -10, 0, 0, 0, 0, 0, 0, -10,
+                    -10, 0, 5, 5, 5, 5, 0, -10,
+                    -5, 0, 5, 5, 5, 5, 0, -5,
+                    0, 0, 5, 5, 5, 5, 0, -5,
+                    -10, 5, 5, 5, 5, 5, 0, -10,
+                    -10, 0, 5, 0, 0, 0, 0, -10,
+                    -20, -10, -10, -5, -5, -10, -10, -20},
+            { // rook
+                    0, 0, 0, 0, 0, 0, 0, 0,
+                    5, 10, 10, 10, 10, 10, 10, 5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    0, 0, 0, 5, 5, 0, 0, 0},
+            { // knight
+                    -50, -40, -30, -30, -30, -30, -40, -50,
+                    -40, -20, 0, 0, 0, 0, -20, -40,
+                    -30, 0, 10, 15, 15, 10, 0, -30,
+                    -30, 5, 15, 20, 20, 15, 5, -30,
+                    -30, 0, 15, 20, 20, 15, 0, -30,
+                    -30, 5, 10, 15, 15, 10, 5, -30,
+                    -40, -20, 0, 5, 5, 0, -20, -40,
+                    -50, -40, -30, -30, -30, -30, -40, -50},
+            { // bishop
+                    -20, -10, -10, -10, -10, -10, -10, -20,
+                    -10, 0, 0, 0, 0, 0, 0, -10,
+                    -10, 0, 5, 10, 10, 5, 0, -10,
+                    -10, 5, 5, 10, 10, 5, 5, -10,
+                    -10, 0, 10, 10, 10, 10, 0, -10,
+                    -10, 10, 10, 10, 10, 10, 10, -10,
+                    -10, 5, 0, 0, 0, 0, 5, -10,
+                    -20, -10, -10, -10, -10, -10, -10, -20},
+            { // pawn
+                    0, 0, 0, 0, 0, 0, 0, 0,
+                    50, 50, 50, 50, 50, 50, 50, 50,
+                    10, 10, 20, 30, 30, 20, 10, 10,
+                    5, 5, 10, 25, 25, 10, 5, 5,
+                    0, 0, 0, 20, 20, 0, 0, 0,
+                    5, -5, -10, 0, 0, -10, -5, 5,
+                    5, 10, 10, -20, -20, 10, 10, 5,
+                    0, 0, 0, 0, 0, 0, 0, 0},
+    };
+
+    private Evaluation() {
+    }
+
+    /**
+     * Value of a piece of the model in centipawns, the king counts 0.
+     */
+    public static int value(PieceModel model) {
+        return VALUES[model.ordinal()];
+    }
+
+    /**
+     * Scores the position for the player to move, positive when that player is ahead.
+     */
+    public static int evaluate(Position position) {
+        int score = 0;
+        for (PieceModel model : PieceModel.values()) {
+            int[] squares = SQUARES[model.ordinal()];
+            for (long pieces = position.pieces(Player.WHITE, model); pieces != 0L; pieces &= pieces - 1)
+                score += VALUES[model.ordinal()] + squares[Long.numberOfTrailingZeros(pieces)];
+            for (long pieces = position.pieces(Player.BLACK, model); pieces != 0L; pieces &= pieces - 1)
+                score -= VALUES[model.ordinal()] + squares[Long.numberOfTrailingZeros(pieces) ^ 56];
+        }
+        return position.getSideToMove() == Player.WHITE ? score : -score;
+    }
+}
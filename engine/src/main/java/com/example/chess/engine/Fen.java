@@ -0,0 +1,197 @@
+package com.example.chess.engine;
+
+import com.example.chess.PieceModel;
+import com.example.chess.Player;
+
+/**
+ * Reads & writes positions in Forsyth-Edwards Notation, see
+ * https://www.chessprogramming.org/Forsyth-Edwards_Notation
+ * Parsing reads the characters straight into a position and writing appends to a builder, so
+ * neither creates an object unless the text is malformed.
+ */
+public final class Fen {
+    public static final String INITIAL = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static final String LETTERS = "kqrnbp"; // in PieceModel order
+    private static final String CASTLES = "KQkq"; // in castling right bit order
+    private static final PieceModel[] MODELS = PieceModel.values();
+
+    private Fen() {
+    }
+
+    /**
+     * Sets the position to the one in the text and returns its fullmove number. The castling, en
+     * passant, halfmove & fullmove fields can be left out. Castling rights without the king &
+     * rook on their squares are dropped. Throws an IllegalArgumentException if the text isn't a
+     * position with one king of each player and no pawn on the first or last rank, or if the en
+     * passant square isn't behind a pawn of the player who just moved.
+     */
+    public static int parse(CharSequence fen, Position position) {
+        position.clear();
+        int length = fen.length(), i = 0;
+        int row = 1, column = 1, whiteKings = 0, blackKings = 0;
+        for (; i < length && fen.charAt(i) != ' '; i++) {
+            char c = fen.charAt(i);
+            if (c == '/') {
+                if (column != 9 || ++row > 8)
+                    throw malformed(fen, i);
+                column = 1;
+            } else if (c >= '1' && c <= '8') {
+                column += c - '0';
+                if (column > 9)
+                    throw malformed(fen, i);
+            } else {
+                int model = LETTERS.indexOf(c | 0x20); // lower case
+                if (model < 0 || column > 8)
+                    throw malformed(fen, i);
+                Player player = c < 'a' ? Player.WHITE : Player.BLACK;
+                if (MODELS[model] == PieceModel.KING && (player == Player.WHITE ? ++whiteKings : ++blackKings) > 1)
+                    throw malformed(fen, i);
+                if (MODELS[model] == PieceModel.PAWN && (row == 1 || row == 8))
+                    throw malformed(fen, i);
+                position.put(player, MODELS[model], Position.square(row, column++));
+            }
+        }
+        if (row != 8 || column != 9 || whiteKings != 1 || blackKings != 1)
+            throw malformed(fen, i);
+
+        i = skipSpaces(fen, i);
+        if (i < length) {
+            char side = fen.charAt(i++);
+            if (side != 'w' && side != 'b')
+                throw malformed(fen, i - 1);
+            position.setSideToMove(side == 'w' ? Player.WHITE : Player.BLACK);
+        }
+
+        i = skipSpaces(fen, i);
+        int castlingRights = 0;
+        if (i < length && fen.charAt(i) == '-')
+            i++;
+        else {
+            for (; i < length && fen.charAt(i) != ' '; i++) {
+                int castle = CASTLES.indexOf(fen.charAt(i));
+                if (castle < 0)
+                    throw malformed(fen, i);
+                castlingRights |= 1 << castle;
+            }
+        }
+        position.setCastlingRights(castlingRights & castlesInPlace(position));
+
+        i = skipSpaces(fen, i);
+        if (i < length && fen.charAt(i) == '-')
+            i++;
+        else if (i < length) {
+            Player side = position.getSideToMove();
+            char rank = side == Player.WHITE ? '6' : '3'; // behind a pawn that just moved 2 squares
+            if (i + 1 >= length || fen.charAt(i) < 'a' || fen.charAt(i) > 'h' || fen.charAt(i + 1) != rank)
+                throw malformed(fen, i);
+            int square = Position.square(9 - (rank - '0'), fen.charAt(i) - 'a' + 1), forward = side == Player.WHITE ? 8 : -8; // a row down the board
+            if (!position.isEmpty(square) || !position.isEmpty(square - forward)
+                    || !is(position, Position.opponent(side), PieceModel.PAWN, square + forward))
+                throw malformed(fen, i); // the pawn, its square & the one it left must be there
+            position.setEnPassantSquare(square);
+            i += 2;
+        }
+
+        i = skipSpaces(fen, i);
+        int halfmoves = 0;
+        for (; i < length && fen.charAt(i) != ' '; i++)
+            halfmoves = digit(fen, i, halfmoves);
+        position.setHalfmoveClock(halfmoves);
+
+        i = skipSpaces(fen, i);
+        int fullmoves = 0;
+        for (; i < length && fen.charAt(i) != ' '; i++)
+            fullmoves = digit(fen, i, fullmoves);
+        if (skipSpaces(fen, i) != length)
+            throw malformed(fen, i);
+        return Math.max(fullmoves, 1);
+    }
+
+    /**
+     * Castling rights the kings & rooks on their first squares allow.
+     */
+    private static int castlesInPlace(Position position) {
+        int castles = 0;
+        if (is(position, Player.WHITE, PieceModel.KING, Position.square(8, 5))) {
+            if (is(position, Player.WHITE, PieceModel.ROOK, Position.square(8, 8)))
+                castles |= Position.WHITE_SHORT_CASTLE;
+            if (is(position, Player.WHITE, PieceModel.ROOK, Position.square(8, 1)))
+                castles |= Position.WHITE_LONG_CASTLE;
+        }
+        if (is(position, Player.BLACK, PieceModel.KING, Position.square(1, 5))) {
+            if (is(position, Player.BLACK, PieceModel.ROOK, Position.square(1, 8)))
+                castles |= Position.BLACK_SHORT_CASTLE;
+            if (is(position, Player.BLACK, PieceModel.ROOK, Position.square(1, 1)))
+                castles |= Position.BLACK_LONG_CASTLE;
+        }
+        return castles;
+    }
+
+    private static boolean is(Position position, Player player, PieceModel model, int square) {
+        return !position.isEmpty(square) && position.playerAt(square) == player && position.modelAt(square) == model;
+    }
+
+    /**
+     * Appends the position to out, fullmove being the number of the move being played.
+     */
+    public static void append(Position position, int fullmove, StringBuilder out) {
+        for (int row = 1; row <= 8; row++) {
+            int empty = 0;
+            for (int column = 1; column <= 8; column++) {
+                int square = Position.square(row, column);
+                if (position.isEmpty(square)) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0)
+                    out.append((char) ('0' + empty));
+                empty = 0;
+                char letter = LETTERS.charAt(position.modelAt(square).ordinal());
+                out.append(position.playerAt(square) == Player.WHITE ? (char) (letter & ~0x20) : letter);
+            }
+            if (empty > 0)
+                out.append((char) ('0' + empty));
+            if (row < 8)
+                out.append('/');
+        }
+        out.append(position.getSideToMove() == Player.WHITE ? " w " : " b ");
+        int castlingRights = position.getCastlingRights();
+        if (castlingRights == 0)
+            out.append('-');
+        for (int castle = 0; castle < CASTLES.length(); castle++) {
+            if ((castlingRights & 1 << castle) != 0)
+                out.append(CASTLES.charAt(castle));
+        }
+        out.append(' ');
+        int enPassant = position.getEnPassantSquare();
+        if (enPassant == Position.NO_SQUARE)
+            out.append('-');
+        else
+            out.append((char) ('a' + Position.column(enPassant) - 1)).append((char) ('0' + 9 - Position.row(enPassant)));
+        out.append(' ').append(position.getHalfmoveClock()).append(' ').append(fullmove);
+    }
+
+    public static String toString(Position position, int fullmove) {
+        StringBuilder out = new StringBuilder(90);
+        append(position, fullmove, out);
+        return out.toString();
+    }
+
+    private static int skipSpaces(CharSequence fen, int i) {
+        while (i < fen.length() && fen.charAt(i) == ' ')
+            i++;
+        return i;
+    }
+
+    private static int digit(CharSequence fen, int i, int number) {
+        char c = fen.charAt(i);
+        if (c < '0' || c > '9' || number > 100000)
+            throw malformed(fen, i);
+        return number * 10 + c - '0';
+    }
+
+    private static IllegalArgumentException malformed(CharSequence fen, int index) {
+        return new IllegalArgumentException("Malformed FEN at " + index + ": " + fen);
+    }
+}
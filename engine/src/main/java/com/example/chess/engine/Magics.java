@@ -0,0 +1,110 @@
+package com.example.chess.engine;
+
+/**
+ * Rook & bishop attacks for any occupancy in one multiply-shift lookup (magic bitboards).
+ * The occupied squares that can block a square's rays are multiplied by its magic number, and the
+ * top bits of the product index a table holding the attacks for that occupancy.
+ * The magic numbers come from a fixed seed trial & error search, kept here so the tables are built
+ * once at class load without searching again.
+ */
+final class Magics {
+    private static final long[] ROOK_MAGICS = {
+            0x2080002080400010L, 0x00C0002001401000L, 0x2100110008402002L, 0x0880080081041000L,
+            0x0200020020041008L, 0x2300040008010012L, 0x0C00283004008201L, 0x0180010000407A80L,
+            0x0168800080400020L, 0x0010400040201000L, 0x1001002001001048L, 0x1001002408100100L,
+            0x0801000408010012L, 0x4001000209000400L, 0x08A20004C8020001L, 0x2002801145002280L,
+            0x0080860021004200L, 0x001000C009402002L, 0x00B0002004002800L, 0x100A808010020800L,
+            0x8101010008000410L, 0x0244008002000480L, 0x0000040010810208L, 0x2000020000448534L,
+            0x4104400480008033L, 0x0000810100204000L, 0x0440430900200010L, 0x4600240900100100L,
+            0x0060080080040080L, 0x0001000300080400L, 0x0004084400011002L, 0x0023040200008041L,
+            0x0580050043002080L, 0x0400804002802008L, 0x0001002001004010L, 0x1000200901001000L,
+            0x4410800801800C00L, 0xA012003806001004L, 0x0020100104008802L, 0x0004808402000041L,
+            0x0010400170898000L, 0x0080500020004004L, 0x1040408012020020L, 0x8010040008004040L,
+            0x2001080100110004L, 0x0000020004008080L, 0x0021010810040002L, 0x0800008C43020024L,
+            0x0000800021005100L, 0x0070201040008080L, 0x0000D04282006A00L, 0x0010014400080240L,
+            0x0001080110050100L, 0x0012000810240600L, 0x0402000801040200L, 0x028100108A004100L,
+            0x0050800300102045L, 0x8208210040120882L, 0x8010600101183441L, 0x020B000910006045L,
+            0x0241001002480005L, 0x0081000400880241L, 0x0000009008024124L, 0x0048122980410402L
+    };
+
+    private static final long[] BISHOP_MAGICS = {
+            0x0848020822040013L, 0x8010A40085821200L, 0x0008008430840822L, 0x0808048108040000L,
+            0x1304042100008104L, 0x5001012010204023L, 0x81048801B8200420L, 0x200A008084012000L,
+            0x0040102001042084L, 0x840A505042428020L, 0x0000700102202920L, 0x44101C0C10800002L,
+            0x0040040422000000L, 0x0180020802090202L, 0x4020020811041202L, 0x000104308C042000L,
+            0x4140661002424400L, 0x0028012008010460L, 0x0188062102002A00L, 0x0014004840102008L,
+            0x0105000290400002L, 0x8001022200410400L, 0x104A041918013446L, 0x008A000082008238L,
+            0x04A0060008100430L, 0x0008220008820801L, 0x2508041208005010L, 0x4008080200202020L,
+            0x2441001013004000L, 0x0030008060407000L, 0x4008108000420800L, 0x0012021050290100L,
+            0x0210080482200500L, 0xCC01112048100480L, 0x0020402806500440L, 0x00048E0080580080L,
+            0x0040102020020080L, 0x0028010440080807L, 0x4601041108008800L, 0x8040810E04104200L,
+            0x901210110400088AL, 0xA003080212081050L, 0x00C1004048401004L, 0x900000A014400800L,
+            0x0008021040405401L, 0x4020008206002090L, 0x0004190424030100L, 0x0424008A02026250L,
+            0x8004088250900040L, 0x1C00430088A04200L, 0x0001020094040001L, 0x8040210020880061L,
+            0x2010040450442032L, 0x0800840850044001L, 0x0004040802140004L, 0x0004080A04222020L,
+            0x8088802110022000L, 0x1081A10416114400L, 0x0205010A24060820L, 0x0000000720411080L,
+            0x1008000208430400L, 0x580C026028810840L, 0x802020441020A110L, 0x12C0022401020018L
+    };
+
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final long[][] ROOK_ATTACKS = new long[64][];
+    private static final long[][] BISHOP_ATTACKS = new long[64][];
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            ROOK_MASKS[square] = blockers(square, Attacks.UP, Attacks.DOWN, Attacks.LEFT, Attacks.RIGHT);
+            BISHOP_MASKS[square] = blockers(square, Attacks.UP_LEFT, Attacks.UP_RIGHT, Attacks.DOWN_LEFT, Attacks.DOWN_RIGHT);
+            ROOK_SHIFTS[square] = 64 - Long.bitCount(ROOK_MASKS[square]);
+            BISHOP_SHIFTS[square] = 64 - Long.bitCount(BISHOP_MASKS[square]);
+            ROOK_ATTACKS[square] = new long[1 << Long.bitCount(ROOK_MASKS[square])];
+            BISHOP_ATTACKS[square] = new long[1 << Long.bitCount(BISHOP_MASKS[square])];
+            long occupied = 0L;
+            do { // every subset of the mask
+                ROOK_ATTACKS[square][rookIndex(square, occupied)] = Attacks.rayRook(square, occupied);
+                occupied = (occupied - ROOK_MASKS[square]) & ROOK_MASKS[square];
+            } while (occupied != 0L);
+            do {
+                BISHOP_ATTACKS[square][bishopIndex(square, occupied)] = Attacks.rayBishop(square, occupied);
+                occupied = (occupied - BISHOP_MASKS[square]) & BISHOP_MASKS[square];
+            } while (occupied != 0L);
+        }
+    }
+
+    private Magics() {
+    }
+
+    static long rook(int square, long occupied) {
+        return ROOK_ATTACKS[square][rookIndex(square, occupied)];
+    }
+
+    static long bishop(int square, long occupied) {
+        return BISHOP_ATTACKS[square][bishopIndex(square, occupied)];
+    }
+
+    private static int rookIndex(int square, long occupied) {
+        return (int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square]);
+    }
+
+    private static int bishopIndex(int square, long occupied) {
+        return (int) (((occupied & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square]);
+    }
+
+    /**
+     * Squares of the rays in the directions that can block them, so without the last one of each ray.
+     */
+    private static long blockers(int square, int... directions) {
+        long mask = 0L;
+        for (int direction : directions) {
+            long ray = Attacks.ray(direction, square);
+            for (long squares = ray; squares != 0L; squares &= squares - 1) {
+                int next = Long.numberOfTrailingZeros(squares);
+                if (Attacks.ray(direction, next) != 0L)
+                    mask |= Position.mask(next);
+            }
+        }
+        return mask;
+    }
+}
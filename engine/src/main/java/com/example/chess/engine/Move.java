@@ -0,0 +1,64 @@
+package com.example.chess.engine;
+
+import com.example.chess.PieceModel;
+
+/**
+ * Moves packed in an int: from square in bits 0-5, to square in bits 6-11, the flags above them
+ * and the crowning model in bits 16-18 (0 if the move doesn't crown a pawn).
+ */
+public final class Move {
+    public static final int NONE = 0;
+    public static final int CAPTURE = 1 << 12;
+    public static final int DOUBLE_PUSH = 1 << 13;
+    public static final int EN_PASSANT = 1 << 14;
+    public static final int CASTLE = 1 << 15;
+
+    private static final int PROMOTION_SHIFT = 16;
+    private static final PieceModel[] MODELS = PieceModel.values();
+
+    private Move() {
+    }
+
+    public static int of(int from, int to, int flags) {
+        return from | (to << 6) | flags;
+    }
+
+    /**
+     * Returns a pawn move that crowns the pawn as model.
+     */
+    public static int crowning(int from, int to, int flags, PieceModel model) {
+        return of(from, to, flags) | ((model.ordinal() + 1) << PROMOTION_SHIFT);
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & CAPTURE) != 0;
+    }
+
+    public static boolean isDoublePush(int move) {
+        return (move & DOUBLE_PUSH) != 0;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return (move & EN_PASSANT) != 0;
+    }
+
+    public static boolean isCastle(int move) {
+        return (move & CASTLE) != 0;
+    }
+
+    /**
+     * Returns the model a pawn crowns as, or null if the move doesn't crown.
+     */
+    public static PieceModel promotion(int move) {
+        int model = (move >>> PROMOTION_SHIFT) & 7;
+        return model == 0 ? null : MODELS[model - 1];
+    }
+}
@@ -0,0 +1,440 @@
+package com.example.chess.engine;
+
+import com.example.chess.PieceModel;
+import com.example.chess.Player;
+
+import java.util.Arrays;
+
+/**
+ * Chess rules for a Position, with no Android dependencies: tells which moves are legal and
+ * whether a king is checked, checkmated or stalemated. Moves are tried on the position itself
+ * and taken back, so a position must not be read by another thread meanwhile, and every thread
+ * needs its own instance.
+ */
+public class MoveGenerator {
+    private static final PieceModel[] CROWNS = {PieceModel.QUEEN, PieceModel.ROOK, PieceModel.BISHOP, PieceModel.KNIGHT};
+
+    private final Position work = new Position();
+    private final MoveList buffer = new MoveList();
+    private MoveList[] plyMoves = new MoveList[0];
+
+    /**
+     * Returns the move of the piece in from to the square to if it's legal, or Move.NONE.
+     * Crowning pawns become queens, the caller can change the model afterwards.
+     */
+    public int legalMove(Position position, int from, int to) {
+        int move = pseudoMove(position, from, to);
+        if (move == Move.NONE)
+            return Move.NONE;
+        return isLegal(position, move) ? move : Move.NONE;
+    }
+
+    /**
+     * Same as legalMove, but answers with the checks & pins of an attack map up to date with the
+     * position instead of trying the move.
+     */
+    public int legalMove(Position position, AttackMap attackMap, int from, int to) {
+        int move = pseudoMove(position, from, to);
+        if (move == Move.NONE)
+            return Move.NONE;
+        return isLegal(position, attackMap, move) ? move : Move.NONE;
+    }
+
+    /**
+     * Returns the move of the piece in from to the square to if the piece can do it, even if it
+     * leaves its king checked, or Move.NONE.
+     */
+    private int pseudoMove(Position position, int from, int to) {
+        Player player = position.playerAt(from);
+        if (player == null || player != position.getSideToMove() || from == to)
+            return Move.NONE;
+        Player otherPlayer = position.playerAt(to);
+        if (player == otherPlayer || position.modelAt(to) == PieceModel.KING) // can't eat its own pieces nor a king
+            return Move.NONE;
+
+        int move;
+        switch (position.modelAt(from)) {
+            case PAWN:
+                move = pawnMovement(position, player, from, to);
+                break;
+            case KING:
+                move = kingMovement(position, player, from, to);
+                break;
+            default:
+                move = moveRules(position, from, to) ? Move.of(from, to, otherPlayer != null ? Move.CAPTURE : 0) : Move.NONE;
+                break;
+        }
+        return move;
+    }
+
+    /**
+     * Checks if a move of the player to move leaves its own king out of check.
+     */
+    private boolean isLegal(Position position, int move) {
+        Player player = position.getSideToMove();
+        position.makeMove(move);
+        boolean legal = !isInCheck(position, player);
+        position.unmakeMove(move);
+        return legal;
+    }
+
+    /**
+     * Checks if a move of the player to move leaves its own king out of check: the king must step
+     * on a safe square, any other piece must stay on its pin ray and block or take a lone checker.
+     */
+    private boolean isLegal(Position position, AttackMap attackMap, int move) {
+        if (Move.isEnPassant(move)) // taking the pawn can uncover the king on its row
+            return isLegal(position, move);
+        Player player = position.getSideToMove();
+        int from = Move.from(move), to = Move.to(move);
+        int king = position.kingSquare(player);
+        if (king == Position.NO_SQUARE)
+            return true;
+        if (from == king) // castles already look at the attacked squares
+            return Move.isCastle(move) || (attackMap.kingEscapes(position, player) & Position.mask(to)) != 0L;
+        if ((attackMap.pinRay(position, from) & Position.mask(to)) == 0L)
+            return false;
+        long checkers = attackMap.checkers(position, player);
+        if (checkers == 0L)
+            return true;
+        if (Long.bitCount(checkers) > 1)
+            return false;
+        return ((Attacks.between(king, Long.numberOfTrailingZeros(checkers)) | checkers) & Position.mask(to)) != 0L;
+    }
+
+    /**
+     * Lists the moves the pieces of the player to move can do, even if they leave its king checked.
+     */
+    private void generatePseudoMoves(Position position, MoveList moves) {
+        moves.clear();
+        Player player = position.getSideToMove();
+        long own = position.occupancy(player), enemy = position.occupancy(Position.opponent(player));
+        long occupied = position.occupied();
+        for (long pieces = own; pieces != 0L; pieces &= pieces - 1) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            switch (position.modelAt(from)) {
+                case PAWN:
+                    addPawnMoves(position, player, from, moves);
+                    break;
+                case KNIGHT:
+                    addTargets(from, Attacks.knight(from) & ~own, enemy, moves);
+                    break;
+                case BISHOP:
+                    addTargets(from, Attacks.bishop(from, occupied) & ~own, enemy, moves);
+                    break;
+                case ROOK:
+                    addTargets(from, Attacks.rook(from, occupied) & ~own, enemy, moves);
+                    break;
+                case QUEEN:
+                    addTargets(from, Attacks.queen(from, occupied) & ~own, enemy, moves);
+                    break;
+                case KING:
+                    addTargets(from, Attacks.king(from) & ~own, enemy, moves);
+                    int row = Position.row(from);
+                    for (int column = 3; column <= 7; column += 4) {
+                        int castle = kingCastle(position, player, from, Position.square(row, column));
+                        if (castle != Move.NONE)
+                            moves.add(castle);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Adds a move from from to every square of targets, eating when it's on an enemy piece.
+     */
+    private void addTargets(int from, long targets, long enemy, MoveList moves) {
+        for (; targets != 0L; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            moves.add(Move.of(from, to, (enemy & Position.mask(to)) != 0L ? Move.CAPTURE : 0));
+        }
+    }
+
+    /**
+     * Adds the pushes, captures & en passant captures of a pawn.
+     */
+    private void addPawnMoves(Position position, Player player, int from, MoveList moves) {
+        int forward = player == Player.WHITE ? -1 : 1;
+        int row = Position.row(from), column = Position.column(from);
+        int to = Position.square(row + forward, column);
+        if (position.isEmpty(to)) {
+            addPawnMove(from, to, 0, moves);
+            int twoSquares = Position.square(row + 2 * forward, column);
+            if (row == (player == Player.WHITE ? 7 : 2) && position.isEmpty(twoSquares))
+                moves.add(Move.of(from, twoSquares, Move.DOUBLE_PUSH));
+        }
+        long attacks = Attacks.pawn(player, from);
+        for (long targets = attacks & position.occupancy(Position.opponent(player)); targets != 0L; targets &= targets - 1)
+            addPawnMove(from, Long.numberOfTrailingZeros(targets), Move.CAPTURE, moves);
+        int enPassant = position.getEnPassantSquare();
+        if (enPassant != Position.NO_SQUARE && (attacks & Position.mask(enPassant)) != 0L)
+            moves.add(Move.of(from, enPassant, Move.CAPTURE | Move.EN_PASSANT));
+    }
+
+    private void addPawnMove(int from, int to, int flags, MoveList moves) {
+        int row = Position.row(to);
+        if (row == 1 || row == 8) {
+            for (PieceModel model : CROWNS)
+                moves.add(Move.crowning(from, to, flags, model));
+        } else
+            moves.add(Move.of(from, to, flags));
+    }
+
+    /**
+     * Lists every legal move of the player to move into moves, one per crowning model.
+     */
+    public void generateLegalMoves(Position position, MoveList moves) {
+        generatePseudoMoves(position, moves);
+        int legal = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            if (isLegal(position, move))
+                moves.set(legal++, move);
+        }
+        moves.truncate(legal);
+    }
+
+    /**
+     * Checks if the player to move has any legal move.
+     */
+    public boolean hasLegalMove(Position position) {
+        return firstLegalMove(position) != Move.NONE;
+    }
+
+    /**
+     * Returns the first legal move found for the player to move, or Move.NONE if there is none.
+     */
+    public int firstLegalMove(Position position) {
+        generatePseudoMoves(position, buffer);
+        for (int i = 0; i < buffer.size(); i++) {
+            if (isLegal(position, buffer.get(i)))
+                return buffer.get(i);
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Counts the positions reached after every sequence of depth legal moves, on a copy of the
+     * position.
+     */
+    public long perft(Position position, int depth) {
+        if (plyMoves.length <= depth) {
+            int size = plyMoves.length;
+            plyMoves = Arrays.copyOf(plyMoves, depth + 1);
+            for (int i = size; i <= depth; i++)
+                plyMoves[i] = new MoveList();
+        }
+        work.copyFrom(position);
+        return perft(0, depth);
+    }
+
+    private long perft(int ply, int depth) {
+        if (depth == 0)
+            return 1;
+        MoveList moves = plyMoves[ply];
+        generateLegalMoves(work, moves);
+        if (depth == 1) // the leaves don't need to be played
+            return moves.size();
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            work.makeMove(move);
+            nodes += perft(ply + 1, depth - 1);
+            work.unmakeMove(move);
+        }
+        return nodes;
+    }
+
+    /**
+     * Checks if the player to move is checkmated.
+     */
+    public boolean isCheckmate(Position position) {
+        return isInCheck(position, position.getSideToMove()) && !hasLegalMove(position);
+    }
+
+    /**
+     * Checks if the player to move is stalemated.
+     */
+    public boolean isStalemate(Position position) {
+        return !isInCheck(position, position.getSideToMove()) && !hasLegalMove(position);
+    }
+
+    /**
+     * Checks if the king of the player have been checked.
+     */
+    public boolean isInCheck(Position position, Player player) {
+        int king = position.kingSquare(player);
+        return king != Position.NO_SQUARE && isAttacked(position, king, Position.opponent(player));
+    }
+
+    /**
+     * Checks if any piece of the player attacks the square, looking from the square with each
+     * piece's attacks: a knight there would see the player's knights, and so on.
+     */
+    public boolean isAttacked(Position position, int square, Player player) {
+        if ((Attacks.knight(square) & position.pieces(player, PieceModel.KNIGHT)) != 0L)
+            return true;
+        if ((Attacks.king(square) & position.pieces(player, PieceModel.KING)) != 0L)
+            return true;
+        if ((Attacks.pawn(Position.opponent(player), square) & position.pieces(player, PieceModel.PAWN)) != 0L)
+            return true;
+        long queens = position.pieces(player, PieceModel.QUEEN);
+        long rooks = (position.pieces(player, PieceModel.ROOK) | queens) & Attacks.rookRays(square);
+        long bishops = (position.pieces(player, PieceModel.BISHOP) | queens) & Attacks.bishopRays(square);
+        long occupied = position.occupied();
+        for (long sliders = rooks | bishops; sliders != 0L; sliders &= sliders - 1) {
+            if ((Attacks.between(square, Long.numberOfTrailingZeros(sliders)) & occupied) == 0L)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns if the piece in from attacks the square to, whatever is on it.
+     */
+    public boolean moveRules(Position position, int from, int to) {
+        if (from == to)
+            return false;
+        switch (position.modelAt(from)) {
+            case PAWN:
+                return pawnAttack(position.playerAt(from), from, to);
+            case ROOK:
+                return rookMovement(position, from, to);
+            case KNIGHT:
+                return knightMovement(from, to);
+            case BISHOP:
+                return bishopMovement(position, from, to);
+            case QUEEN:
+                return queenMovement(position, from, to);
+            case KING:
+                return kingAttack(from, to);
+        }
+        return false;
+    }
+
+    /**
+     * Special rules for pawns: moves forward 1 or 2 squares, eats in diagonal, en passant & crowning.
+     */
+    private int pawnMovement(Position position, Player player, int from, int to) {
+        int forward = player == Player.WHITE ? -1 : 1;
+        int rows = Position.row(to) - Position.row(from);
+        int flags;
+        if (Position.column(from) == Position.column(to)) { // if moving forward
+            if (!position.isEmpty(to))
+                return Move.NONE;
+            if (rows == forward)
+                flags = 0;
+            else if (rows == 2 * forward && Position.row(from) == (player == Player.WHITE ? 7 : 2) && !checkPieceBetween(position, from, to))
+                flags = Move.DOUBLE_PUSH;
+            else
+                return Move.NONE;
+        } else if (pawnAttack(player, from, to)) { // if trying to eat
+            if (!position.isEmpty(to))
+                flags = Move.CAPTURE;
+            else if (to == position.getEnPassantSquare()) // if last turn a pawn went enPassant
+                flags = Move.CAPTURE | Move.EN_PASSANT;
+            else
+                return Move.NONE;
+        } else
+            return Move.NONE;
+
+        if (Position.row(to) == (player == Player.WHITE ? 1 : 8))
+            return Move.crowning(from, to, flags, PieceModel.QUEEN);
+        return Move.of(from, to, flags);
+    }
+
+    /**
+     * Squares a pawn eats on.
+     */
+    private boolean pawnAttack(Player player, int from, int to) {
+        return (Attacks.pawn(player, from) & Position.mask(to)) != 0L;
+    }
+
+    /**
+     * Rules for rook.
+     */
+    private boolean rookMovement(Position position, int from, int to) {
+        return (Attacks.rookRays(from) & Position.mask(to)) != 0L && !checkPieceBetween(position, from, to);
+    }
+
+    /**
+     * Rules for knight.
+     */
+    private boolean knightMovement(int from, int to) {
+        return (Attacks.knight(from) & Position.mask(to)) != 0L;
+    }
+
+    /**
+     * Rules for bishop.
+     */
+    private boolean bishopMovement(Position position, int from, int to) {
+        return (Attacks.bishopRays(from) & Position.mask(to)) != 0L && !checkPieceBetween(position, from, to);
+    }
+
+    /**
+     * Rules for queen.
+     */
+    private boolean queenMovement(Position position, int from, int to) {
+        return rookMovement(position, from, to) || bishopMovement(position, from, to);
+    }
+
+    /**
+     * Special rules for king: one square around or castling.
+     */
+    private int kingMovement(Position position, Player player, int from, int to) {
+        if (kingAttack(from, to))
+            return Move.of(from, to, position.isEmpty(to) ? 0 : Move.CAPTURE);
+        return kingCastle(position, player, from, to);
+    }
+
+    /**
+     * Squares around the king.
+     */
+    private boolean kingAttack(int from, int to) {
+        return (Attacks.king(from) & Position.mask(to)) != 0L;
+    }
+
+    /**
+     * Checks if can castle: the king & rook haven't moved, nothing in the way and the king
+     * isn't checked nor crosses a square an enemy piece is looking at.
+     */
+    private int kingCastle(Position position, Player player, int from, int to) {
+        int row = player == Player.WHITE ? 8 : 1;
+        if (from != Position.square(row, 5) || Position.row(to) != row)
+            return Move.NONE;
+        Player enemy = Position.opponent(player);
+        int rights = position.getCastlingRights();
+        if (Position.column(to) == 7) { // short castle
+            if ((rights & (player == Player.WHITE ? Position.WHITE_SHORT_CASTLE : Position.BLACK_SHORT_CASTLE)) == 0)
+                return Move.NONE;
+            if (!position.isEmpty(Position.square(row, 6)) || !position.isEmpty(Position.square(row, 7))) // if piece in the way
+                return Move.NONE;
+            for (int column = 5; column <= 7; column++) {
+                if (isAttacked(position, Position.square(row, column), enemy))
+                    return Move.NONE;
+            }
+            return Move.of(from, to, Move.CASTLE);
+        } else if (Position.column(to) == 3) { // long castle
+            if ((rights & (player == Player.WHITE ? Position.WHITE_LONG_CASTLE : Position.BLACK_LONG_CASTLE)) == 0)
+                return Move.NONE;
+            for (int column = 2; column <= 4; column++) {
+                if (!position.isEmpty(Position.square(row, column)))
+                    return Move.NONE;
+            }
+            for (int column = 3; column <= 5; column++) {
+                if (isAttacked(position, Position.square(row, column), enemy))
+                    return Move.NONE;
+            }
+            return Move.of(from, to, Move.CASTLE);
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Checks if there are any piece between from & to, in front, in lateral or in diagonal.
+     */
+    private static boolean checkPieceBetween(Position position, int from, int to) {
+        return (Attacks.between(from, to) & position.occupied()) != 0L;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.chess.engine;
+
+/**
+ * Reusable buffer of packed moves, so generating moves doesn't allocate.
+ */
+public class MoveList {
+    public static final int CAPACITY = 256; // no position has more legal moves than this
+
+    private final int[] moves = new int[CAPACITY];
+    private int size;
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(int move) {
+        moves[size++] = move;
+    }
+
+    public int get(int index) {
+        return moves[index];
+    }
+
+    public void set(int index, int move) {
+        moves[index] = move;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Keeps only the first size moves.
+     */
+    public void truncate(int size) {
+        this.size = size;
+    }
+}
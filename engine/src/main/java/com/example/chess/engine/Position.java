@@ -0,0 +1,342 @@
+package com.example.chess.engine;
+
+import com.example.chess.PieceModel;
+import com.example.chess.Player;
+
+import java.util.Arrays;
+
+/**
+ * Piece placement stored as one 64-bit occupancy bitboard per Player/PieceModel pair, plus the
+ * turn, castling rights and en passant square needed to tell which moves are legal.
+ * A square index is (row - 1) * 8 + (column - 1), with the same rows and columns the board uses.
+ * Moves played with makeMove can be taken back with unmakeMove, the state they can't rebuild is
+ * kept packed in an int stack. The Zobrist key of the position is kept up to date by every change.
+ */
+public class Position {
+    public static final int NO_SQUARE = -1;
+    public static final int WHITE_SHORT_CASTLE = 1;
+    public static final int WHITE_LONG_CASTLE = 2;
+    public static final int BLACK_SHORT_CASTLE = 4;
+    public static final int BLACK_LONG_CASTLE = 8;
+    public static final int ALL_CASTLES = 15;
+
+    // undo entry: castling rights in bits 0-3, en passant square + 1 in bits 4-10,
+    // captured model + 1 in bits 11-13 and halfmove clock from bit 14
+    private static final int EN_PASSANT_SHIFT = 4;
+    private static final int CAPTURED_SHIFT = 11;
+    private static final int HALFMOVE_SHIFT = 14;
+
+    private static final Player[] PLAYERS = Player.values();
+    private static final PieceModel[] MODELS = PieceModel.values();
+
+    private final long[] bitboards = new long[PLAYERS.length * MODELS.length];
+    private final long[] occupancy = new long[PLAYERS.length];
+    private final byte[] squares = new byte[64]; // bitboard index + 1 of the piece on each square, 0 if empty
+    private long occupied;
+    private Player sideToMove = Player.WHITE;
+    private int castlingRights;
+    private int enPassantSquare = NO_SQUARE;
+    private int halfmoveClock;
+    private long key;
+    private int[] undo = new int[MoveList.CAPACITY];
+    private int undoSize;
+
+    /**
+     * Returns the square index of a row & column (1 to 8).
+     */
+    public static int square(int row, int column) {
+        return (row - 1) * 8 + (column - 1);
+    }
+
+    /**
+     * Returns the row (1 to 8) of a square index.
+     */
+    public static int row(int square) {
+        return (square >>> 3) + 1;
+    }
+
+    /**
+     * Returns the column (1 to 8) of a square index.
+     */
+    public static int column(int square) {
+        return (square & 7) + 1;
+    }
+
+    /**
+     * Returns the single bit mask of a square index.
+     */
+    public static long mask(int square) {
+        return 1L << square;
+    }
+
+    public static Player opponent(Player player) {
+        return player == Player.WHITE ? Player.BLACK : Player.WHITE;
+    }
+
+    /**
+     * Removes every piece and leaves white to move without castling rights nor moves to take back.
+     */
+    public void clear() {
+        for (int i = 0; i < bitboards.length; i++)
+            bitboards[i] = 0L;
+        for (int i = 0; i < occupancy.length; i++)
+            occupancy[i] = 0L;
+        Arrays.fill(squares, (byte) 0);
+        occupied = 0L;
+        sideToMove = Player.WHITE;
+        castlingRights = 0;
+        enPassantSquare = NO_SQUARE;
+        halfmoveClock = 0;
+        key = 0L; // nothing on the board, white to move
+        undoSize = 0;
+    }
+
+    /**
+     * Copies every field of other into this position, but not the moves it can take back.
+     */
+    public void copyFrom(Position other) {
+        System.arraycopy(other.bitboards, 0, bitboards, 0, bitboards.length);
+        System.arraycopy(other.occupancy, 0, occupancy, 0, occupancy.length);
+        System.arraycopy(other.squares, 0, squares, 0, squares.length);
+        occupied = other.occupied;
+        sideToMove = other.sideToMove;
+        castlingRights = other.castlingRights;
+        enPassantSquare = other.enPassantSquare;
+        halfmoveClock = other.halfmoveClock;
+        key = other.key;
+        undoSize = 0;
+    }
+
+    /**
+     * Plays a legal move: moves the piece, takes the captured one, moves the rook when castling,
+     * crowns the pawn and updates turn, castling rights & en passant square.
+     */
+    public void play(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        Player player = playerAt(from);
+        PieceModel model = modelAt(from);
+        PieceModel promotion = Move.promotion(move);
+        if (Move.isEnPassant(move))
+            remove(square(row(from), column(to)));
+        remove(to);
+        remove(from);
+        put(player, promotion != null ? promotion : model, to);
+        if (Move.isCastle(move)) {
+            if (column(to) == 7)
+                move(square(row(to), 8), square(row(to), 6));
+            else
+                move(square(row(to), 1), square(row(to), 4));
+        }
+        setCastlingRights(castlingRights & ~(lostCastles(from) | lostCastles(to)));
+        setEnPassantSquare(Move.isDoublePush(move) ? (from + to) / 2 : NO_SQUARE);
+        halfmoveClock = model == PieceModel.PAWN || Move.isCapture(move) ? 0 : halfmoveClock + 1;
+        setSideToMove(opponent(player));
+    }
+
+    /**
+     * Plays a legal move like play, keeping what unmakeMove needs to take it back.
+     */
+    public void makeMove(int move) {
+        int to = Move.to(move);
+        int captured = 0;
+        if (Move.isEnPassant(move))
+            captured = PieceModel.PAWN.ordinal() + 1;
+        else if (Move.isCapture(move))
+            captured = modelAt(to).ordinal() + 1;
+        if (undoSize == undo.length)
+            undo = Arrays.copyOf(undo, undoSize * 2);
+        undo[undoSize++] = castlingRights | ((enPassantSquare + 1) << EN_PASSANT_SHIFT) | (captured << CAPTURED_SHIFT)
+                | (halfmoveClock << HALFMOVE_SHIFT);
+        play(move);
+    }
+
+    /**
+     * Takes back the last move played with makeMove, which must be move.
+     */
+    public void unmakeMove(int move) {
+        int state = undo[--undoSize];
+        int from = Move.from(move);
+        int to = Move.to(move);
+        Player player = opponent(sideToMove);
+        PieceModel model = Move.promotion(move) != null ? PieceModel.PAWN : modelAt(to);
+        remove(to);
+        put(player, model, from);
+        if (Move.isCastle(move)) {
+            if (column(to) == 7)
+                move(square(row(to), 6), square(row(to), 8));
+            else
+                move(square(row(to), 4), square(row(to), 1));
+        }
+        int captured = (state >>> CAPTURED_SHIFT) & 7;
+        if (captured != 0)
+            put(sideToMove, MODELS[captured - 1], Move.isEnPassant(move) ? square(row(from), column(to)) : to);
+        setCastlingRights(state & ALL_CASTLES);
+        setEnPassantSquare(((state >>> EN_PASSANT_SHIFT) & 127) - 1);
+        halfmoveClock = state >>> HALFMOVE_SHIFT;
+        setSideToMove(player);
+    }
+
+    /**
+     * Number of moves played with makeMove that can still be taken back.
+     */
+    public int undoSize() {
+        return undoSize;
+    }
+
+    /**
+     * Castling rights lost when a piece leaves or arrives to the square.
+     */
+    private static int lostCastles(int square) {
+        switch (square) {
+            case 56: // white long rook
+                return WHITE_LONG_CASTLE;
+            case 60: // white king
+                return WHITE_SHORT_CASTLE | WHITE_LONG_CASTLE;
+            case 63: // white short rook
+                return WHITE_SHORT_CASTLE;
+            case 0: // black long rook
+                return BLACK_LONG_CASTLE;
+            case 4: // black king
+                return BLACK_SHORT_CASTLE | BLACK_LONG_CASTLE;
+            case 7: // black short rook
+                return BLACK_SHORT_CASTLE;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Puts a piece on an empty square.
+     */
+    public void put(Player player, PieceModel model, int square) {
+        long mask = mask(square);
+        int index = index(player, model);
+        bitboards[index] |= mask;
+        occupancy[player.ordinal()] |= mask;
+        occupied |= mask;
+        squares[square] = (byte) (index + 1);
+        key ^= Zobrist.piece(index, square);
+    }
+
+    /**
+     * Removes whatever piece is on the square.
+     */
+    public void remove(int square) {
+        int index = squares[square] - 1;
+        if (index < 0)
+            return;
+        long keep = ~mask(square);
+        bitboards[index] &= keep;
+        occupancy[index / MODELS.length] &= keep;
+        occupied &= keep;
+        squares[square] = 0;
+        key ^= Zobrist.piece(index, square);
+    }
+
+    /**
+     * Moves the piece on from to the square to, dropping anything left on to.
+     */
+    public void move(int from, int to) {
+        Player player = playerAt(from);
+        PieceModel model = modelAt(from);
+        if (player == null)
+            return;
+        remove(from);
+        remove(to);
+        put(player, model, to);
+    }
+
+    public boolean isEmpty(int square) {
+        return (occupied & mask(square)) == 0L;
+    }
+
+    /**
+     * Returns the player with a piece on the square, or null if it's empty.
+     */
+    public Player playerAt(int square) {
+        int index = squares[square] - 1;
+        return index < 0 ? null : PLAYERS[index / MODELS.length];
+    }
+
+    /**
+     * Returns the model of the piece on the square, or null if it's empty.
+     */
+    public PieceModel modelAt(int square) {
+        int index = squares[square] - 1;
+        return index < 0 ? null : MODELS[index % MODELS.length];
+    }
+
+    /**
+     * Returns the square of the player's king, or NO_SQUARE if there is none.
+     */
+    public int kingSquare(Player player) {
+        long king = pieces(player, PieceModel.KING);
+        return king == 0L ? NO_SQUARE : Long.numberOfTrailingZeros(king);
+    }
+
+    public long pieces(Player player, PieceModel model) {
+        return bitboards[index(player, model)];
+    }
+
+    public long occupancy(Player player) {
+        return occupancy[player.ordinal()];
+    }
+
+    public long occupied() {
+        return occupied;
+    }
+
+    public Player getSideToMove() {
+        return sideToMove;
+    }
+
+    public void setSideToMove(Player sideToMove) {
+        key ^= Zobrist.sideToMove(this.sideToMove) ^ Zobrist.sideToMove(sideToMove);
+        this.sideToMove = sideToMove;
+    }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    public void setCastlingRights(int castlingRights) {
+        key ^= Zobrist.castles(this.castlingRights) ^ Zobrist.castles(castlingRights);
+        this.castlingRights = castlingRights;
+    }
+
+    /**
+     * Returns the square a pawn skipped on its last double move, or NO_SQUARE.
+     */
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    public void setEnPassantSquare(int enPassantSquare) {
+        key ^= Zobrist.enPassant(this.enPassantSquare) ^ Zobrist.enPassant(enPassantSquare);
+        this.enPassantSquare = enPassantSquare;
+    }
+
+    /**
+     * Returns the moves played since the last capture or pawn move, for the fifty move rule.
+     */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public void setHalfmoveClock(int halfmoveClock) {
+        this.halfmoveClock = halfmoveClock;
+    }
+
+    /**
+     * Returns the Zobrist key of the placement, turn, castling rights & en passant file, equal for
+     * equal positions whatever moves led to them.
+     */
+    public long getKey() {
+        return key;
+    }
+
+    private static int index(Player player, PieceModel model) {
+        return player.ordinal() * MODELS.length + model.ordinal();
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.chess.engine;
+
+import com.example.chess.PieceModel;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Finds the best move of the player to move: negamax alpha-beta deepened one ply at a time until
+ * the time runs out, with a quiescence search of captures at the leaves. Moves are tried best
+ * first: the transposition table move, captures by most valuable victim & least valuable
+ * attacker, killer moves and then quiet moves by history. One search runs at a time, stop can be
+ * called from any thread.
+ */
+public class Search {
+    public static final int MATE = 30000;
+    public static final int MAX_PLY = 64;
+
+    private static final int INFINITY = 32000;
+    private static final int TABLE_MOVE = 1 << 30;
+    private static final int CAPTURE = 1 << 29;
+    private static final int FIRST_KILLER = 1 << 28;
+    private static final int SECOND_KILLER = FIRST_KILLER - 1;
+    private static final BooleanSupplier NEVER = () -> false;
+
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final TranspositionTable table;
+    private final Position position = new Position();
+    private final MoveList[] moves = new MoveList[MAX_PLY + 1];
+    private final int[][] orders = new int[MAX_PLY + 1][MoveList.CAPACITY];
+    private final long[] keys = new long[MAX_PLY + 1];
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+    private final int[][] history = new int[64][64];
+    private volatile boolean stopped;
+    private BooleanSupplier cancelled = NEVER;
+    private long deadline;
+    private long nodes;
+    private int depth;
+    private int score;
+
+    public Search(TranspositionTable table) {
+        this.table = table;
+        for (int ply = 0; ply <= MAX_PLY; ply++)
+            moves[ply] = new MoveList();
+    }
+
+    /**
+     * Searches a copy of the position for at most millis milliseconds or maxDepth plies and
+     * returns the best move found, or Move.NONE if the player to move can't move.
+     */
+    public synchronized int bestMove(Position root, long millis, int maxDepth) {
+        return bestMove(root, millis, maxDepth, 0, NEVER);
+    }
+
+    /**
+     * Same search returning early once cancelled is true, even if it was before the search
+     * started, unlike stop.
+     */
+    public synchronized int bestMove(Position root, long millis, int maxDepth, BooleanSupplier cancelled) {
+        return bestMove(root, millis, maxDepth, 0, cancelled);
+    }
+
+    /**
+     * Same search with every iteration depthOffset plies deeper, so helper threads sharing the
+     * table fill it ahead of the main one.
+     */
+    synchronized int bestMove(Position root, long millis, int maxDepth, int depthOffset, BooleanSupplier cancelled) {
+        position.copyFrom(root);
+        this.cancelled = cancelled;
+        stopped = cancelled.getAsBoolean();
+        deadline = System.nanoTime() + millis * 1000000L;
+        nodes = 0;
+        depth = 0;
+        score = 0;
+        for (int[] squares : history)
+            Arrays.fill(squares, 0);
+        for (int[] plyKillers : killers)
+            Arrays.fill(plyKillers, Move.NONE);
+        int best = moveGenerator.firstLegalMove(position);
+        long start = System.nanoTime();
+        for (int iteration = 1 + depthOffset; iteration <= Math.min(maxDepth, MAX_PLY) && best != Move.NONE; iteration++) {
+            int iterationScore = search(iteration, 0, -INFINITY, INFINITY);
+            if (stopped)
+                break;
+            depth = iteration;
+            score = iterationScore;
+            long data = table.probe(position.getKey());
+            if (data != TranspositionTable.MISS && TranspositionTable.move(data) != Move.NONE)
+                best = TranspositionTable.move(data);
+            if (Math.abs(score) > MATE - MAX_PLY) // a mate was found, deeper won't change it
+                break;
+            if (System.nanoTime() - start > (deadline - start) / 2) // the next iteration wouldn't end in time
+                break;
+        }
+        return best;
+    }
+
+    /**
+     * Makes the running search return as soon as possible with what it found so far.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Positions visited by the last search.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Depth of the last iteration the last search finished.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Score of the best move of the last finished iteration, from the player to move.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    private int search(int depth, int ply, int alpha, int beta) {
+        if ((++nodes & 1023) == 0 && (System.nanoTime() > deadline || cancelled.getAsBoolean()))
+            stopped = true;
+        if (stopped)
+            return 0;
+        keys[ply] = position.getKey();
+        if (ply > 0 && isDraw(ply))
+            return 0;
+        boolean inCheck = moveGenerator.isInCheck(position, position.getSideToMove());
+        if (inCheck && ply < MAX_PLY) // look one ply deeper at checks
+            depth++;
+        if (depth <= 0 || ply == MAX_PLY)
+            return quiesce(ply, alpha, beta);
+
+        int tableMove = Move.NONE;
+        long data = table.probe(keys[ply]);
+        if (data != TranspositionTable.MISS) {
+            tableMove = TranspositionTable.move(data);
+            if (ply > 0 && TranspositionTable.depth(data) >= depth) {
+                int tableScore = fromTable(TranspositionTable.score(data), ply);
+                int bound = TranspositionTable.bound(data);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && tableScore >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && tableScore <= alpha))
+                    return tableScore;
+            }
+        }
+
+        MoveList list = moves[ply];
+        moveGenerator.generateLegalMoves(position, list);
+        if (list.size() == 0)
+            return inCheck ? -MATE + ply : 0;
+        order(list, orders[ply], tableMove, ply);
+
+        int alphaStart = alpha, bestScore = -INFINITY, bestMove = Move.NONE;
+        for (int i = 0; i < list.size(); i++) {
+            int move = next(list, orders[ply], i);
+            position.makeMove(move);
+            int moveScore = -search(depth - 1, ply + 1, -beta, -alpha);
+            position.unmakeMove(move);
+            if (stopped)
+                return 0;
+            if (moveScore > bestScore) {
+                bestScore = moveScore;
+                bestMove = move;
+                if (moveScore > alpha) {
+                    alpha = moveScore;
+                    if (alpha >= beta) {
+                        if (!Move.isCapture(move))
+                            rememberQuiet(move, depth, ply);
+                        break;
+                    }
+                }
+            }
+        }
+        int bound = bestScore >= beta ? TranspositionTable.LOWER_BOUND
+                : bestScore > alphaStart ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND;
+        table.store(keys[ply], bestMove, toTable(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    /**
+     * Searches only captures & crownings until the position is quiet, the player to move can also
+     * stand on the static score. A checked player looks at every move instead.
+     */
+    private int quiesce(int ply, int alpha, int beta) {
+        if ((++nodes & 1023) == 0 && (System.nanoTime() > deadline || cancelled.getAsBoolean()))
+            stopped = true;
+        if (stopped)
+            return 0;
+        boolean inCheck = moveGenerator.isInCheck(position, position.getSideToMove());
+        int bestScore = -INFINITY;
+        if (!inCheck) {
+            bestScore = Evaluation.evaluate(position);
+            if (bestScore >= beta || ply == MAX_PLY)
+                return bestScore;
+            if (bestScore > alpha)
+                alpha = bestScore;
+        }
+        MoveList list = moves[ply];
+        moveGenerator.generateLegalMoves(position, list);
+        if (list.size() == 0)
+            return inCheck ? -MATE + ply : 0;
+        if (!inCheck) { // keep only the captures & crownings
+            int noisy = 0;
+            for (int i = 0; i < list.size(); i++) {
+                int move = list.get(i);
+                if (Move.isCapture(move) || Move.promotion(move) == PieceModel.QUEEN)
+                    list.set(noisy++, move);
+            }
+            list.truncate(noisy);
+        }
+        if (ply == MAX_PLY)
+            return Evaluation.evaluate(position);
+        order(list, orders[ply], Move.NONE, ply);
+        for (int i = 0; i < list.size(); i++) {
+            int move = next(list, orders[ply], i);
+            position.makeMove(move);
+            int moveScore = -quiesce(ply + 1, -beta, -alpha);
+            position.unmakeMove(move);
+            if (stopped)
+                return 0;
+            if (moveScore > bestScore) {
+                bestScore = moveScore;
+                if (moveScore > alpha) {
+                    alpha = moveScore;
+                    if (alpha >= beta)
+                        break;
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    /**
+     * Draws by the fifty move rule or by repeating a position of the moves searched.
+     */
+    private boolean isDraw(int ply) {
+        if (position.getHalfmoveClock() >= 100)
+            return true;
+        int reversible = Math.min(position.getHalfmoveClock(), ply);
+        for (int back = 4; back <= reversible; back += 2) {
+            if (keys[ply - back] == keys[ply])
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives every move the order it should be tried in, higher first.
+     */
+    private void order(MoveList list, int[] order, int tableMove, int ply) {
+        for (int i = 0; i < list.size(); i++) {
+            int move = list.get(i);
+            int from = Move.from(move), to = Move.to(move);
+            if (move == tableMove)
+                order[i] = TABLE_MOVE;
+            else if (Move.isCapture(move)) {
+                PieceModel victim = Move.isEnPassant(move) ? PieceModel.PAWN : position.modelAt(to);
+                order[i] = CAPTURE + Evaluation.value(victim) * 16 - Evaluation.value(position.modelAt(from)) / 16;
+            } else if (move == killers[ply][0])
+                order[i] = FIRST_KILLER;
+            else if (move == killers[ply][1])
+                order[i] = SECOND_KILLER;
+            else
+                order[i] = history[from][to];
+        }
+    }
+
+    /**
+     * Swaps the best of the moves left to index and returns it.
+     */
+    private static int next(MoveList list, int[] order, int index) {
+        int best = index;
+        for (int i = index + 1; i < list.size(); i++) {
+            if (order[i] > order[best])
+                best = i;
+        }
+        int move = list.get(best), value = order[best];
+        list.set(best, list.get(index));
+        order[best] = order[index];
+        list.set(index, move);
+        order[index] = value;
+        return move;
+    }
+
+    /**
+     * A quiet move that was too good: try it early in sibling positions and in the whole search.
+     */
+    private void rememberQuiet(int move, int depth, int ply) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] squares = history[Move.from(move)];
+        squares[Move.to(move)] = Math.min(squares[Move.to(move)] + depth * depth, SECOND_KILLER - 1);
+    }
+
+    /**
+     * Mate scores are stored from the position, not from the root.
+     */
+    private static int toTable(int score, int ply) {
+        if (score > MATE - MAX_PLY)
+            return score + ply;
+        if (score < -MATE + MAX_PLY)
+            return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score > MATE - MAX_PLY)
+            return score - ply;
+        if (score < -MATE + MAX_PLY)
+            return score + ply;
+        return score;
+    }
+}
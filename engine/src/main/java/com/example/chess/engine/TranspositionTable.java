@@ -0,0 +1,92 @@
+package com.example.chess.engine;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size cache of what is known about positions, keyed by their Zobrist key and shared by
+ * threads without locks. Every entry is two longs: the key XOR the data, then the data, with the
+ * move, score, depth & bound packed in it. A probe only trusts an entry if both longs XOR back to
+ * the key, so an entry torn by two threads writing at once reads as a miss instead of as garbage.
+ */
+public class TranspositionTable {
+    public static final long MISS = 0L;
+    public static final int EXACT = 1;
+    public static final int LOWER_BOUND = 2; // the score is at least this
+    public static final int UPPER_BOUND = 3; // the score is at most this
+
+    // data: move in bits 0-18, score + 32768 in bits 19-34, depth in bits 35-42, bound in bits 43-44
+    private static final int SCORE_SHIFT = 19;
+    private static final int DEPTH_SHIFT = 35;
+    private static final int BOUND_SHIFT = 43;
+
+    private final long[] entries;
+    private final int mask;
+
+    /**
+     * Creates a table using at most megabytes of memory, rounded down to a power of two entries.
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1)
+            throw new IllegalArgumentException("At least 1 MB");
+        long bytes = Math.min((long) megabytes << 20, 1L << 30);
+        int size = Integer.highestOneBit((int) (bytes / 16));
+        entries = new long[size * 2];
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the packed data stored for the key, or MISS.
+     */
+    public long probe(long key) {
+        int index = index(key);
+        long check = entries[index];
+        long data = entries[index + 1];
+        return data != MISS && (check ^ data) == key ? data : MISS;
+    }
+
+    /**
+     * Stores what a search found about the position with the key. A deeper entry of the same
+     * position is kept, any other position is replaced.
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        int index = index(key);
+        long old = entries[index + 1];
+        if ((entries[index] ^ old) == key && depth(old) > depth)
+            return;
+        long data = (move & 0x7FFFFL) | ((long) (score + 32768) << SCORE_SHIFT) | ((long) depth << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT);
+        entries[index] = key ^ data;
+        entries[index + 1] = data;
+    }
+
+    public void clear() {
+        Arrays.fill(entries, 0L);
+    }
+
+    /**
+     * Number of entries the table holds.
+     */
+    public int size() {
+        return mask + 1;
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0x7FFFFL);
+    }
+
+    public static int score(long data) {
+        return (int) ((data >>> SCORE_SHIFT) & 0xFFFFL) - 32768;
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & 0xFFL);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> BOUND_SHIFT) & 3L);
+    }
+
+    private int index(long key) {
+        return ((int) key & mask) << 1;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.chess.engine;
+
+import com.example.chess.PieceModel;
+import com.example.chess.Player;
+
+import java.util.Random;
+
+/**
+ * Random 64-bit numbers for every piece on every square, the side to move, the castling rights and
+ * the en passant file. A position's key is the XOR of the numbers of what's in it, so a move only
+ * XORs in & out what it changes. The seed is fixed so keys stay the same between runs.
+ */
+final class Zobrist {
+    private static final long[][] PIECES = new long[Player.values().length * PieceModel.values().length][64];
+    private static final long[] CASTLES = new long[Position.ALL_CASTLES + 1];
+    private static final long[] EN_PASSANT = new long[8];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        Random random = new Random(0x5EED_C0DEL);
+        for (long[] squares : PIECES)
+            for (int square = 0; square < 64; square++)
+                squares[square] = random.nextLong();
+        long[] rights = new long[4];
+        for (int i = 0; i < rights.length; i++)
+            rights[i] = random.nextLong();
+        for (int castles = 0; castles < CASTLES.length; castles++) // every right XORs its own number
+            for (int i = 0; i < rights.length; i++)
+                if ((castles & (1 << i)) != 0)
+                    CASTLES[castles] ^= rights[i];
+        for (int column = 0; column < EN_PASSANT.length; column++)
+            EN_PASSANT[column] = random.nextLong();
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Number of a piece by its bitboard index in Position.
+     */
+    static long piece(int index, int square) {
+        return PIECES[index][square];
+    }
+
+    static long castles(int castlingRights) {
+        return CASTLES[castlingRights];
+    }
+
+    /**
+     * Number of the file of the en passant square, or 0 if there is none.
+     */
+    static long enPassant(int square) {
+        return square == Position.NO_SQUARE ? 0L : EN_PASSANT[Position.column(square) - 1];
+    }
+
+    static long sideToMove(Player player) {
+        return player == Player.BLACK ? BLACK_TO_MOVE : 0L;
+    }
+
+    /**
+     * Computes the key of a position from scratch.
+     */
+    static long key(Position position) {
+        long key = 0L;
+        for (Player player : Player.values())
+            for (PieceModel model : PieceModel.values())
+                for (long pieces = position.pieces(player, model); pieces != 0L; pieces &= pieces - 1)
+                    key ^= PIECES[player.ordinal() * PieceModel.values().length + model.ordinal()][Long.numberOfTrailingZeros(pieces)];
+        return key ^ castles(position.getCastlingRights()) ^ enPassant(position.getEnPassantSquare())
+                ^ sideToMove(position.getSideToMove());
+    }
+}
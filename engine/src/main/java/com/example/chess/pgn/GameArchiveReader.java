@@ -0,0 +1,189 @@
+package com.example.chess.pgn;
+
+import com.example.chess.PieceModel;
+import com.example.chess.engine.Fen;
+import com.example.chess.engine.Move;
+import com.example.chess.engine.MoveGenerator;
+import com.example.chess.engine.Position;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads games of an archive through a memory mapping: any game's result, clocks & moves are
+ * found in constant time from the offset index, without reading the games before it.
+ * <p>
+ * The archive is big endian. A header (MAGIC, VERSION & the offset where the games end, written
+ * last when games are added) comes first, then the games: the number
+ * of moves (u16), the result (u8), the termination (u8), the time white & black had left in ms
+ * (i32, -1 if unknown), the length of the start FEN (u16, 0 for the initial position), the FEN
+ * in ASCII and the moves in 16 bits each, from square in bits 0-5, to square in bits 6-11 and the
+ * crowning model in bits 12-14. Then the index, the offset of each game (i32), and a trailer:
+ * the offset of the index, the number of games & MAGIC again (i32 each). If adding games was
+ * cut short, the trailer is bad and the index is found again from the lengths of the games up to
+ * the end in the header.
+ */
+public class GameArchiveReader implements Closeable {
+    static final int MAGIC = 0x43484741; // CHGA
+    static final short VERSION = 2;
+    static final int HEADER_SIZE = 10, GAMES_END = 6, GAME_HEADER_SIZE = 14, TRAILER_SIZE = 12;
+    static final String[] RESULTS = {PgnGame.UNKNOWN, PgnGame.WHITE_WINS, PgnGame.BLACK_WINS, PgnGame.DRAW};
+
+    private static final PgnGame.Termination[] TERMINATIONS = PgnGame.Termination.values();
+    private static final PieceModel[] MODELS = PieceModel.values();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int index, games;
+    private final int[] offsets; // found again, null if the index is good
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final Position position = new Position();
+
+    public GameArchiveReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Archive over 2 GB");
+        if (size < HEADER_SIZE)
+            throw new IOException("Not a game archive");
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int end = (int) size;
+        if (buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a game archive");
+        if (buffer.getShort(4) != VERSION)
+            throw new IOException("Archive version " + buffer.getShort(4) + " unsupported");
+        index = buffer.getInt(GAMES_END);
+        if (index < HEADER_SIZE || index > end)
+            throw new IOException("Corrupt archive header");
+        if (end - index >= TRAILER_SIZE && hasIndex(index, end, buffer.getInt(end - TRAILER_SIZE), buffer.getInt(end - 8), buffer.getInt(end - 4))) {
+            games = buffer.getInt(end - 8);
+            offsets = null;
+        } else { // games were being added when the process died
+            offsets = scan(buffer, index);
+            games = offsets.length;
+        }
+    }
+
+    /**
+     * Whether the trailer read at the end of the file goes with the games ending at gamesEnd.
+     */
+    static boolean hasIndex(int gamesEnd, long end, int index, int games, int magic) {
+        return magic == MAGIC && index == gamesEnd && games >= 0 && gamesEnd + 4L * games == end - TRAILER_SIZE;
+    }
+
+    /**
+     * Offsets of the games from the header to end, found from their lengths.
+     */
+    static int[] scan(ByteBuffer buffer, int end) throws IOException {
+        int[] offsets = new int[64];
+        int games = 0, offset = HEADER_SIZE;
+        while (offset < end) {
+            if (end - offset < GAME_HEADER_SIZE)
+                throw new IOException("Corrupt archive");
+            if (games == offsets.length)
+                offsets = Arrays.copyOf(offsets, games * 2);
+            offsets[games++] = offset;
+            offset += GAME_HEADER_SIZE + (buffer.getShort(offset + 12) & 0xFFFF) + 2 * (buffer.getShort(offset) & 0xFFFF);
+        }
+        if (offset != end)
+            throw new IOException("Corrupt archive");
+        return Arrays.copyOf(offsets, games);
+    }
+
+    /**
+     * Number of games in the archive.
+     */
+    public int size() {
+        return games;
+    }
+
+    /**
+     * Number of moves of both players in the game, from 0.
+     */
+    public int getMoveCount(int game) {
+        return buffer.getShort(offset(game)) & 0xFFFF;
+    }
+
+    public String getResult(int game) {
+        return RESULTS[buffer.get(offset(game) + 2) & 3];
+    }
+
+    public PgnGame.Termination getTermination(int game) {
+        int termination = buffer.get(offset(game) + 3);
+        return termination < TERMINATIONS.length ? TERMINATIONS[termination] : PgnGame.Termination.UNKNOWN;
+    }
+
+    public long getWhiteMillis(int game) {
+        return buffer.getInt(offset(game) + 4);
+    }
+
+    public long getBlackMillis(int game) {
+        return buffer.getInt(offset(game) + 8);
+    }
+
+    /**
+     * Returns the from & to squares and the crowning of a move of the game, without the flags
+     * only the position tells. read() gives the moves with their flags.
+     */
+    public int getMove(int game, int move) {
+        int offset = offset(game);
+        if (move < 0 || move >= (buffer.getShort(offset) & 0xFFFF))
+            throw new IndexOutOfBoundsException("Move " + move + " of game " + game);
+        int packed = buffer.getShort(moves(offset) + 2 * move) & 0xFFFF;
+        return (packed & 0xFFF) | ((packed >>> 12) << 16);
+    }
+
+    /**
+     * Fills record with the game, replaying its moves to restore their flags. Only the FEN tag
+     * is kept in the archive, the others are left out.
+     */
+    public void read(int game, PgnGame record) {
+        int offset = offset(game);
+        record.clear();
+        int fenLength = buffer.getShort(offset + 12) & 0xFFFF;
+        String fen = Fen.INITIAL;
+        if (fenLength > 0) {
+            char[] chars = new char[fenLength];
+            for (int i = 0; i < fenLength; i++)
+                chars[i] = (char) buffer.get(offset + GAME_HEADER_SIZE + i);
+            fen = new String(chars);
+            record.setTag("SetUp", "1");
+            record.setTag("FEN", fen);
+        }
+        record.setResult(getResult(game));
+        record.setTermination(getTermination(game));
+        record.setClocks(getWhiteMillis(game), getBlackMillis(game));
+        Fen.parse(fen, position);
+        int count = buffer.getShort(offset) & 0xFFFF, moves = moves(offset);
+        for (int i = 0; i < count; i++) {
+            int packed = buffer.getShort(moves + 2 * i) & 0xFFFF;
+            int from = packed & 63, to = (packed >>> 6) & 63, crown = packed >>> 12;
+            int move = moveGenerator.legalMove(position, from, to);
+            if (move == Move.NONE)
+                throw new IllegalStateException("Corrupt move " + i + " of game " + game);
+            if (crown != 0)
+                move = Move.crowning(from, to, move & Move.CAPTURE, MODELS[crown - 1]);
+            position.play(move);
+            record.addMove(move);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close(); // the mapping stays valid until it's collected
+    }
+
+    private int offset(int game) {
+        if (game < 0 || game >= games)
+            throw new IndexOutOfBoundsException("Game " + game + " of " + games);
+        return offsets != null ? offsets[game] : buffer.getInt(index + 4 * game);
+    }
+
+    private int moves(int offset) {
+        return offset + GAME_HEADER_SIZE + (buffer.getShort(offset + 12) & 0xFFFF);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.chess.pgn;
+
+import com.example.chess.PieceModel;
+import com.example.chess.engine.Move;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes games to an archive, the format GameArchiveReader describes. An archive that isn't
+ * empty gets the new games after its own; the index is written back on close, and the games are
+ * only committed once it's synced, by writing where they end in the header. Until then the
+ * archive holds the games it had, whatever was written after them.
+ */
+public class GameArchiveWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long written; // bytes of the file before the buffer
+    private int[] offsets = new int[256];
+    private int games;
+
+    /**
+     * The channel must be open to read & write, not to append.
+     */
+    public GameArchiveWriter(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size == 0) {
+            buffer.putInt(GameArchiveReader.MAGIC).putShort(GameArchiveReader.VERSION).putInt(GameArchiveReader.HEADER_SIZE);
+            return;
+        }
+        if (size < GameArchiveReader.HEADER_SIZE || size > Integer.MAX_VALUE)
+            throw new IOException("Not a game archive");
+        ByteBuffer header = ByteBuffer.allocate(GameArchiveReader.HEADER_SIZE);
+        readFully(header, 0);
+        int index = header.getInt(GameArchiveReader.GAMES_END);
+        if (header.getInt(0) != GameArchiveReader.MAGIC || header.getShort(4) != GameArchiveReader.VERSION
+                || index < GameArchiveReader.HEADER_SIZE || index > size)
+            throw new IOException("Not a game archive");
+        ByteBuffer trailer = ByteBuffer.allocate(GameArchiveReader.TRAILER_SIZE);
+        if (size - index >= GameArchiveReader.TRAILER_SIZE)
+            readFully(trailer, size - GameArchiveReader.TRAILER_SIZE);
+        if (GameArchiveReader.hasIndex(index, size, trailer.getInt(0), trailer.getInt(4), trailer.getInt(8))) {
+            games = trailer.getInt(4);
+            ByteBuffer indexBuffer = ByteBuffer.allocate(4 * games);
+            readFully(indexBuffer, index);
+            indexBuffer.flip();
+            offsets = new int[Math.max(games * 2, offsets.length)];
+            indexBuffer.asIntBuffer().get(offsets, 0, games);
+        } else { // the last writer died before committing, its games are dropped
+            int[] found = GameArchiveReader.scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, index), index);
+            games = found.length;
+            offsets = Arrays.copyOf(found, Math.max(games * 2, offsets.length));
+        }
+        written = index; // the new games go over the old index
+    }
+
+    /**
+     * Appends the game: its start FEN, moves, result, termination & clocks.
+     */
+    public void write(PgnGame game) throws IOException {
+        String fen = game.getTag("FEN");
+        byte[] fenBytes = fen == null ? new byte[0] : fen.getBytes(StandardCharsets.US_ASCII);
+        if (game.size() > 0xFFFF || fenBytes.length > 0xFFFF)
+            throw new IOException("Game too long for the archive");
+        int size = GameArchiveReader.GAME_HEADER_SIZE + fenBytes.length + 2 * game.size();
+        long offset = written + buffer.position();
+        if (offset + size + 4L * (games + 1) + GameArchiveReader.TRAILER_SIZE > Integer.MAX_VALUE)
+            throw new IOException("Archive full");
+        reserve(size);
+        if (games == offsets.length)
+            offsets = Arrays.copyOf(offsets, games * 2);
+        offsets[games++] = (int) offset;
+        buffer.putShort((short) game.size())
+                .put((byte) Math.max(0, Arrays.asList(GameArchiveReader.RESULTS).indexOf(game.getResult())))
+                .put((byte) game.getTermination().ordinal())
+                .putInt(millis(game.getWhiteMillis()))
+                .putInt(millis(game.getBlackMillis()))
+                .putShort((short) fenBytes.length)
+                .put(fenBytes);
+        for (int i = 0; i < game.size(); i++) {
+            int move = game.getMove(i);
+            PieceModel crown = Move.promotion(move);
+            buffer.putShort((short) (Move.from(move) | (Move.to(move) << 6) | (crown == null ? 0 : crown.ordinal() + 1) << 12));
+        }
+    }
+
+    /**
+     * Writes the index & trailer and syncs them, then commits the games in the header and closes
+     * the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            int index = (int) (written + buffer.position());
+            for (int i = 0; i < games; i++) {
+                reserve(4);
+                buffer.putInt(offsets[i]);
+            }
+            reserve(GameArchiveReader.TRAILER_SIZE);
+            buffer.putInt(index).putInt(games).putInt(GameArchiveReader.MAGIC);
+            flush();
+            channel.truncate(written);
+            channel.force(false);
+            ByteBuffer commit = ByteBuffer.allocate(4).putInt(0, index);
+            while (commit.hasRemaining())
+                channel.write(commit, GameArchiveReader.GAMES_END + commit.position());
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Makes room for size bytes in the buffer, writing it first if needed.
+     */
+    private void reserve(int size) throws IOException {
+        if (buffer.remaining() >= size)
+            return;
+        flush();
+        if (buffer.capacity() < size)
+            buffer = ByteBuffer.allocate(size);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            written += channel.write(buffer, written);
+        buffer.clear();
+    }
+
+    private void readFully(ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0)
+                throw new IOException("Truncated archive");
+        }
+    }
+
+    private static int millis(long millis) {
+        return (int) Math.max(PgnGame.NO_TIME, Math.min(millis, Integer.MAX_VALUE));
+    }
+}
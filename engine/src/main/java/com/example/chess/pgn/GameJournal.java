@@ -0,0 +1,415 @@
+package com.example.chess.pgn;
+
+import com.example.chess.Player;
+import com.example.chess.engine.ChessClock;
+import com.example.chess.engine.EngineExecutor;
+import com.example.chess.engine.Fen;
+import com.example.chess.engine.Position;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Autosave of the game in play, so it survives the process: every move is appended to a log as
+ * it's played, and a snapshot of the position, record & clocks now and then makes the log short
+ * again. Loading replays the log over the last snapshot.
+ * <p>
+ * The callers only copy a few bytes; the files are written on a thread of the journal, in
+ * batches of the moves queued meanwhile, and every batch is synced before the next one. A write
+ * that fails is reported to the failure callback and leaves the files as they were.
+ */
+public class GameJournal implements Closeable {
+    private static final int MAGIC = 0x43484a4e; // CHJN
+    private static final short VERSION = 1;
+    private static final int ENTRY_SIZE = 28; // ply, move, both clocks & the CRC of the rest
+    private static final ChessClock.Mode[] MODES = ChessClock.Mode.values();
+
+    /**
+     * A game as it was last saved.
+     */
+    public static final class Saved {
+        private final PgnGame record = new PgnGame();
+        private final Position position = new Position();
+        private long whiteNanos, blackNanos, baseMillis, incrementMillis;
+        private int fullmove;
+        private ChessClock.Mode mode;
+
+        /**
+         * The moves played so far & the tags.
+         */
+        public PgnGame getRecord() {
+            return record;
+        }
+
+        /**
+         * The position after the last move.
+         */
+        public Position getPosition() {
+            return position;
+        }
+
+        /**
+         * Number of the move to play in the position, the FEN's last field.
+         */
+        public int getFullmove() {
+            return fullmove;
+        }
+
+        public long getWhiteNanos() {
+            return whiteNanos;
+        }
+
+        public long getBlackNanos() {
+            return blackNanos;
+        }
+
+        public long getBaseMillis() {
+            return baseMillis;
+        }
+
+        public long getIncrementMillis() {
+            return incrementMillis;
+        }
+
+        public ChessClock.Mode getMode() {
+            return mode;
+        }
+    }
+
+    private final File snapshotFile, snapshotTemp, logFile;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> new Thread(r, "autosave"));
+    private final CRC32 crc = new CRC32(); // of the calling thread
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+    private ByteBuffer pending = ByteBuffer.allocate(ENTRY_SIZE * 16), writing = ByteBuffer.allocate(ENTRY_SIZE * 16);
+    private boolean flushing; // a flush is queued
+    private int generation; // of the log, a snapshot or clear makes the queued flush useless
+    private FileChannel log; // of the writer thread
+    private long logged = -1; // bytes of the log synced by the writer thread, -1 if unknown
+    private volatile EngineExecutor.Callback<Exception> onFailure =
+            e -> Logger.getLogger(GameJournal.class.getName()).log(Level.WARNING, "Autosave failed", e);
+
+    /**
+     * Keeps the game in autosave.snap & autosave.wal in the directory.
+     */
+    public GameJournal(File directory) {
+        snapshotFile = new File(directory, "autosave.snap");
+        snapshotTemp = new File(directory, "autosave.snap.tmp");
+        logFile = new File(directory, "autosave.wal");
+    }
+
+    /**
+     * Hands the failures to write or read the files to callback, on the thread of the journal,
+     * instead of logging them.
+     */
+    public void setFailureCallback(EngineExecutor.Callback<Exception> callback) {
+        onFailure = callback;
+    }
+
+    /**
+     * Logs the move played at ply, from 0, and the time both players have left after it. A move
+     * logged again for the last ply replaces it, like when the player picks what a pawn crowns as.
+     */
+    public void append(int ply, int move, long whiteNanos, long blackNanos) {
+        int batch;
+        entry.clear();
+        entry.putInt(ply).putInt(move).putLong(whiteNanos).putLong(blackNanos);
+        crc.reset();
+        crc.update(entry.array(), 0, ENTRY_SIZE - 4);
+        entry.putInt((int) crc.getValue());
+        synchronized (this) {
+            if (pending.remaining() < ENTRY_SIZE) {
+                ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+                pending.flip();
+                pending = larger.put(pending);
+            }
+            pending.put(entry.array());
+            if (flushing)
+                return;
+            flushing = true;
+            batch = generation;
+        }
+        writer.execute(() -> flush(batch));
+    }
+
+    /**
+     * Saves the game as it is now, the record's moves leading to the position, and empties the
+     * log. The time control is kept for when the game goes on.
+     */
+    public void snapshot(PgnGame record, Position position, long whiteNanos, long blackNanos,
+                         long baseMillis, long incrementMillis, ChessClock.Mode mode) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + 4 * record.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(whiteNanos);
+            out.writeLong(blackNanos);
+            out.writeLong(baseMillis);
+            out.writeLong(incrementMillis);
+            out.writeByte(mode.ordinal());
+            out.writeUTF(Fen.toString(position, fullmove(record)));
+            out.writeShort(record.getTags().size());
+            for (Map.Entry<String, String> tag : record.getTags().entrySet()) {
+                out.writeUTF(tag.getKey());
+                out.writeUTF(tag.getValue());
+            }
+            out.writeInt(record.size());
+            for (int i = 0; i < record.size(); i++)
+                out.writeInt(record.getMove(i));
+            CRC32 check = new CRC32();
+            check.update(bytes.toByteArray());
+            out.writeInt((int) check.getValue());
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not from memory
+        }
+        byte[] snapshot = bytes.toByteArray();
+        dropPending();
+        writer.execute(() -> writeSnapshot(snapshot));
+    }
+
+    /**
+     * Forgets the saved game, like when it ends.
+     */
+    public void clear() {
+        dropPending();
+        writer.execute(() -> {
+            closeLog();
+            if (delete(snapshotFile) && delete(logFile))
+                logged = 0;
+        });
+    }
+
+    /**
+     * Hands the game saved, or null if there is none or it can't be read, to callback on the
+     * thread of the journal once the writes queued so far are done.
+     */
+    public void load(EngineExecutor.Callback<Saved> callback) {
+        writer.execute(() -> {
+            Saved saved = null;
+            try {
+                saved = read();
+            } catch (IOException e) {
+                onFailure.onResult(e);
+            }
+            callback.onResult(saved);
+        });
+    }
+
+    /**
+     * Returns the game saved, once the writes queued so far are done, or null if there is none.
+     */
+    public Saved load() throws IOException {
+        try {
+            return writer.submit(this::read).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted loading the saved game", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Can't load the saved game", e.getCause());
+        }
+    }
+
+    /**
+     * Writes what's queued, then stops the thread.
+     */
+    @Override
+    public void close() {
+        writer.execute(this::closeLog);
+        writer.shutdown();
+    }
+
+    /**
+     * Forgets the moves not written yet, the snapshot or clear queued next covers them.
+     */
+    private synchronized void dropPending() {
+        pending.clear();
+        flushing = false;
+        generation++;
+    }
+
+    /**
+     * Writes the moves logged since the last flush in one go.
+     */
+    private void flush(int batch) {
+        synchronized (this) {
+            if (batch != generation)
+                return; // a snapshot or clear came since
+            ByteBuffer swap = writing;
+            writing = pending;
+            pending = swap;
+            pending.clear();
+            flushing = false;
+        }
+        writing.flip();
+        try {
+            if (log == null) { // without what a failed write left, read() would stop there
+                log = new RandomAccessFile(logFile, "rw").getChannel();
+                long size = log.size();
+                log.truncate(logged >= 0 ? Math.min(logged, size) : size - size % ENTRY_SIZE);
+                log.position(log.size());
+            }
+            while (writing.hasRemaining())
+                log.write(writing);
+            log.force(false);
+            logged = log.position();
+        } catch (IOException e) {
+            closeLog();
+            retry(batch);
+            onFailure.onResult(new IOException("Can't write " + logFile, e));
+        }
+    }
+
+    /**
+     * Puts the moves of a batch that failed back before the ones queued since, so the next
+     * flush writes them again over what the failure left.
+     */
+    private synchronized void retry(int batch) {
+        if (batch != generation)
+            return; // a snapshot or clear covers them
+        writing.position(0);
+        ByteBuffer moves = ByteBuffer.allocate(Math.max(pending.capacity(), writing.remaining() + pending.position()));
+        pending.flip();
+        pending = moves.put(writing).put(pending);
+    }
+
+    /**
+     * Replaces the snapshot all at once through a temporary file, then empties the log. A crash
+     * in between leaves a log of moves the snapshot has, which read() skips. If the snapshot
+     * can't be written, the last one and the log are kept.
+     */
+    private void writeSnapshot(byte[] snapshot) {
+        try {
+            try (FileOutputStream out = new FileOutputStream(snapshotTemp)) {
+                out.write(snapshot);
+                out.getFD().sync();
+            }
+            if (!snapshotTemp.renameTo(snapshotFile))
+                throw new IOException("Can't rename " + snapshotTemp);
+        } catch (IOException e) {
+            snapshotTemp.delete();
+            onFailure.onResult(new IOException("Can't write " + snapshotFile, e));
+            return;
+        }
+        closeLog();
+        if (delete(logFile))
+            logged = 0;
+    }
+
+    private Saved read() throws IOException {
+        if (!snapshotFile.exists())
+            return null;
+        byte[] snapshot = new byte[(int) snapshotFile.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(snapshotFile))) {
+            in.readFully(snapshot);
+        }
+        if (snapshot.length < 4)
+            return null;
+        CRC32 check = new CRC32();
+        check.update(snapshot, 0, snapshot.length - 4);
+        if ((int) check.getValue() != ByteBuffer.wrap(snapshot).getInt(snapshot.length - 4))
+            return null; // torn, start over
+        Saved saved = new Saved();
+        PgnGame record = saved.record;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION)
+                return null;
+            saved.whiteNanos = in.readLong();
+            saved.blackNanos = in.readLong();
+            saved.baseMillis = in.readLong();
+            saved.incrementMillis = in.readLong();
+            saved.mode = MODES[in.readByte()];
+            String fen = in.readUTF();
+            for (int tags = in.readShort(); tags > 0; tags--)
+                record.setTag(in.readUTF(), in.readUTF());
+            for (int moves = in.readInt(); moves > 0; moves--)
+                record.addMove(in.readInt());
+            saved.fullmove = Fen.parse(fen, saved.position);
+        }
+        int plies = record.size(); // the position is after these
+        if (logFile.exists())
+            readLog(saved);
+        for (int i = plies; i < record.size(); i++) {
+            if (saved.position.getSideToMove() == Player.BLACK)
+                saved.fullmove++;
+            saved.position.play(record.getMove(i));
+        }
+        return saved;
+    }
+
+    /**
+     * Adds the moves logged after the snapshot to the record, up to the first torn entry.
+     */
+    private void readLog(Saved saved) throws IOException {
+        PgnGame record = saved.record;
+        int snapshotPlies = record.size();
+        byte[] entries = new byte[(int) logFile.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(logFile))) {
+            in.readFully(entries);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(entries);
+        CRC32 check = new CRC32();
+        for (int offset = 0; offset + ENTRY_SIZE <= entries.length; offset += ENTRY_SIZE) {
+            check.reset();
+            check.update(entries, offset, ENTRY_SIZE - 4);
+            if ((int) check.getValue() != buffer.getInt(offset + ENTRY_SIZE - 4))
+                return;
+            int ply = buffer.getInt(offset), move = buffer.getInt(offset + 4);
+            if (ply < snapshotPlies)
+                continue; // the snapshot has it
+            if (ply == record.size())
+                record.addMove(move);
+            else if (ply == record.size() - 1 && ply >= snapshotPlies)
+                record.setMove(ply, move);
+            else
+                return;
+            saved.whiteNanos = buffer.getLong(offset + 8);
+            saved.blackNanos = buffer.getLong(offset + 16);
+        }
+    }
+
+    private void closeLog() {
+        if (log == null)
+            return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            // nothing left to write
+        }
+        log = null;
+    }
+
+    /**
+     * Number of the move to play after the record's moves, counted from its start position's.
+     */
+    private static int fullmove(PgnGame record) {
+        Position start = new Position();
+        int fullmove = Fen.parse(record.getStartFen(), start);
+        return fullmove + (record.size() + (start.getSideToMove() == Player.BLACK ? 1 : 0)) / 2;
+    }
+
+    /**
+     * Deletes the file if it's there, reporting it if it stays.
+     */
+    private boolean delete(File file) {
+        if (!file.exists() || file.delete())
+            return true;
+        onFailure.onResult(new IOException("Can't delete " + file));
+        return false;
+    }
+}
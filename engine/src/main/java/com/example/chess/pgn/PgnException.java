@@ -0,0 +1,31 @@
+package com.example.chess.pgn;
+
+import java.io.IOException;
+
+/**
+ * A game of a PGN file that can't be read: bad syntax, a bad start position or an illegal move.
+ * The reader has skipped the rest of the game, the next one can be read.
+ */
+public class PgnException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long game;
+    private final long line;
+
+    public PgnException(String message, long game, long line) {
+        super(message + " in game " + game + " at line " + line);
+        this.game = game;
+        this.line = line;
+    }
+
+    /**
+     * Number of the game in the file, from 1.
+     */
+    public long getGame() {
+        return game;
+    }
+
+    public long getLine() {
+        return line;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.chess.pgn;
+
+import com.example.chess.engine.Fen;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A game record: the tags in their order, the moves played from the start position, the result,
+ * how the game ended & the clocks. Readers refill the same record game after game.
+ */
+public class PgnGame {
+    public static final String WHITE_WINS = "1-0", BLACK_WINS = "0-1", DRAW = "1/2-1/2", UNKNOWN = "*";
+    public static final long NO_TIME = -1;
+
+    /**
+     * Why the game ended.
+     */
+    public enum Termination {
+        UNKNOWN, CHECKMATE, STALEMATE, RESIGNATION, AGREEMENT, TIMEOUT
+    }
+
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private final Map<String, String> tagView = Collections.unmodifiableMap(tags);
+    private int[] moves = new int[128];
+    private int size;
+    private String result = UNKNOWN;
+    private Termination termination = Termination.UNKNOWN;
+    private long whiteMillis = NO_TIME, blackMillis = NO_TIME;
+
+    /**
+     * Forgets the tags, moves, result & clocks.
+     */
+    public void clear() {
+        tags.clear();
+        size = 0;
+        result = UNKNOWN;
+        termination = Termination.UNKNOWN;
+        whiteMillis = NO_TIME;
+        blackMillis = NO_TIME;
+    }
+
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    public void setTag(String name, String value) {
+        tags.put(name, value);
+    }
+
+    public Map<String, String> getTags() {
+        return tagView;
+    }
+
+    /**
+     * Returns the FEN of the start position, the initial one unless a FEN tag says otherwise.
+     */
+    public String getStartFen() {
+        String fen = tags.get("FEN");
+        return fen != null ? fen : Fen.INITIAL;
+    }
+
+    public void addMove(int move) {
+        if (size == moves.length)
+            moves = Arrays.copyOf(moves, size * 2);
+        moves[size++] = move;
+    }
+
+    public int getMove(int index) {
+        return moves[index];
+    }
+
+    /**
+     * Replaces a move, like the last one when the player picks what a pawn crowns as.
+     */
+    public void setMove(int index, int move) {
+        moves[index] = move;
+    }
+
+    /**
+     * Number of moves of both players.
+     */
+    public int size() {
+        return size;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * Sets the result, one of WHITE_WINS, BLACK_WINS, DRAW or UNKNOWN, and the Result tag.
+     */
+    public void setResult(String result) {
+        this.result = result;
+        tags.put("Result", result);
+    }
+
+    public Termination getTermination() {
+        return termination;
+    }
+
+    public void setTermination(Termination termination) {
+        this.termination = termination;
+    }
+
+    /**
+     * Time white had left at the end, NO_TIME if unknown.
+     */
+    public long getWhiteMillis() {
+        return whiteMillis;
+    }
+
+    /**
+     * Time black had left at the end, NO_TIME if unknown.
+     */
+    public long getBlackMillis() {
+        return blackMillis;
+    }
+
+    public void setClocks(long whiteMillis, long blackMillis) {
+        this.whiteMillis = whiteMillis;
+        this.blackMillis = blackMillis;
+    }
+}
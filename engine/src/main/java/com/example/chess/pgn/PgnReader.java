@@ -0,0 +1,303 @@
+package com.example.chess.pgn;
+
+import com.example.chess.engine.Fen;
+import com.example.chess.engine.Move;
+import com.example.chess.engine.Position;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the games of a PGN file one at a time through a fixed NIO buffer, so a file of any size
+ * takes the same memory. Every move is checked against the rules as it's read; comments,
+ * variations & annotations are skipped.
+ * See http://www.saremba.de/chessgml/standards/pgn/pgn-complete.htm
+ */
+public class PgnReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final StringBuilder token = new StringBuilder();
+    private byte[] bytes = new byte[64]; // a tag value, decoded once complete
+    private final Position initial = new Position(), position = new Position();
+    private final San san = new San();
+    private boolean endOfChannel, moving;
+    private long line = 1, games;
+
+    public PgnReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.flip(); // empty until the first read
+        Fen.parse(Fen.INITIAL, initial);
+    }
+
+    /**
+     * Reads the next game into game and returns true, or returns false at the end of the file.
+     * Throws a PgnException for a game that can't be read, after skipping the rest of it.
+     */
+    public boolean next(PgnGame game) throws IOException {
+        game.clear();
+        boolean started = false;
+        moving = false;
+        while (true) {
+            int c = skipSpaces();
+            if (c < 0) {
+                if (!started)
+                    return false;
+                throw error("Missing result");
+            }
+            if (!started) {
+                started = true;
+                games++;
+            }
+            if (c == '[') {
+                if (moving) // the tags of the next game
+                    throw error("Missing result");
+                read();
+                readTag(game);
+            } else if (!skipComment(c)) {
+                readToken();
+                String result = result();
+                if (result != null) {
+                    if (!moving)
+                        start(game);
+                    game.setResult(result);
+                    return true;
+                }
+                int san = skipMoveNumber();
+                if (san == token.length())
+                    continue;
+                if (!moving) {
+                    start(game);
+                    moving = true;
+                }
+                int move = this.san.parse(token, san, token.length(), position);
+                if (move == Move.NONE)
+                    throw error("Illegal move " + token.substring(san));
+                position.play(move);
+                game.addMove(move);
+            }
+        }
+    }
+
+    /**
+     * The position at the end of the last game read.
+     */
+    public Position getPosition() {
+        return position;
+    }
+
+    /**
+     * Games started so far, read or not.
+     */
+    public long getGames() {
+        return games;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Sets the position to the start of the game, the FEN tag if there is one.
+     */
+    private void start(PgnGame game) throws IOException {
+        String fen = game.getTag("FEN");
+        if (fen == null) {
+            position.copyFrom(initial);
+            return;
+        }
+        try {
+            Fen.parse(fen, position);
+        } catch (IllegalArgumentException e) {
+            throw error("Bad FEN tag");
+        }
+    }
+
+    /**
+     * Reads [Name "value"] after the [.
+     */
+    private void readTag(PgnGame game) throws IOException {
+        skipSpaces();
+        token.setLength(0);
+        for (int c = peek(); c > ' ' && c != '"' && c != ']'; c = peek())
+            token.append((char) read());
+        skipSpaces();
+        if (token.length() == 0 || read() != '"')
+            throw error("Bad tag");
+        int length = 0;
+        for (int c = read(); c != '"'; c = read()) {
+            if (c == '\\')
+                c = read();
+            if (c < 0 || c == '\n')
+                throw error("Unterminated tag");
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, length * 2);
+            bytes[length++] = (byte) c;
+        }
+        skipSpaces();
+        if (read() != ']')
+            throw error("Bad tag");
+        game.setTag(token.toString(), new String(bytes, 0, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the characters up to a space or a delimiter.
+     */
+    private void readToken() throws IOException {
+        token.setLength(0);
+        for (int c = peek(); c > ' ' && "[]{}();$\"".indexOf(c) < 0; c = peek())
+            token.append((char) read());
+        if (token.length() == 0) // a stray delimiter
+            token.append((char) read());
+    }
+
+    /**
+     * Returns the result the token is, or null.
+     */
+    private String result() {
+        if (is(PgnGame.WHITE_WINS))
+            return PgnGame.WHITE_WINS;
+        if (is(PgnGame.BLACK_WINS))
+            return PgnGame.BLACK_WINS;
+        if (is(PgnGame.DRAW))
+            return PgnGame.DRAW;
+        if (is(PgnGame.UNKNOWN))
+            return PgnGame.UNKNOWN;
+        return null;
+    }
+
+    private boolean is(String text) {
+        if (token.length() != text.length())
+            return false;
+        for (int i = 0; i < text.length(); i++) {
+            if (token.charAt(i) != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns where the move starts after a number like 12. or 12... in the token, 0 without one.
+     */
+    private int skipMoveNumber() {
+        int i = 0;
+        while (i < token.length() && token.charAt(i) >= '0' && token.charAt(i) <= '9')
+            i++;
+        if (i == 0 || (i < token.length() && token.charAt(i) != '.'))
+            return 0; // not a number, like 0-0
+        while (i < token.length() && token.charAt(i) == '.')
+            i++;
+        return i;
+    }
+
+    /**
+     * Skips the comment, variation or annotation starting with c, if it is one.
+     */
+    private boolean skipComment(int c) throws IOException {
+        switch (c) {
+            case '{':
+                while (c >= 0 && c != '}')
+                    c = read();
+                return true;
+            case ';':
+            case '%':
+                while (c >= 0 && c != '\n')
+                    c = read();
+                return true;
+            case '$':
+                read();
+                while (peek() >= '0' && peek() <= '9')
+                    read();
+                return true;
+            case '(':
+                read();
+                for (int depth = 1; depth > 0; ) {
+                    c = peek();
+                    if (c < 0)
+                        return true;
+                    if (c == '{' || c == ';')
+                        skipComment(c);
+                    else if (read() == '(')
+                        depth++;
+                    else if (c == ')')
+                        depth--;
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Skips the rest of the game, up to its result or the tags of the next one.
+     */
+    private void skipGame() throws IOException {
+        while (true) {
+            int c = skipSpaces();
+            if (c < 0 || (c == '[' && moving))
+                return;
+            if (c == '[') {
+                while (c >= 0 && c != ']' && c != '\n')
+                    c = read();
+            } else if (!skipComment(c)) {
+                readToken();
+                moving = true;
+                if (result() != null)
+                    return;
+            }
+        }
+    }
+
+    private PgnException error(String message) throws IOException {
+        PgnException exception = new PgnException(message, games, line);
+        skipGame();
+        return exception;
+    }
+
+    private int skipSpaces() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+            read();
+            c = peek();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (!buffer.hasRemaining()) {
+            if (endOfChannel)
+                return -1;
+            buffer.clear();
+            int read;
+            do
+                read = channel.read(buffer);
+            while (read == 0);
+            buffer.flip();
+            if (read < 0) {
+                endOfChannel = true;
+                return -1;
+            }
+        }
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c >= 0) {
+            buffer.get();
+            if (c == '\n')
+                line++;
+        }
+        return c;
+    }
+}
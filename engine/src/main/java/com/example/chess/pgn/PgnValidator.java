@@ -0,0 +1,285 @@
+package com.example.chess.pgn;
+
+import com.example.chess.Player;
+import com.example.chess.engine.MoveGenerator;
+import com.example.chess.engine.Position;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Replays every game of PGN files through the rules on all cores: a file is cut in chunks that
+ * start at a game, and a fork/join pool replays the chunks, each with readers & rules of its
+ * own. Reports the illegal moves and the games whose result misses a mate or a stalemate.
+ * Usage: PgnValidator [-threads N] file.pgn...
+ */
+public class PgnValidator {
+    private static final long MIN_CHUNK = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 8; // so a slow chunk doesn't leave cores idle
+    private static final int SCAN_BUFFER = 1 << 12;
+
+    /**
+     * What the replay found, merged from the chunks.
+     */
+    public static final class Report {
+        private static final int MAX_ERRORS = 100; // the rest are only counted
+
+        private long games, moves, illegal, missedMates, missedStalemates;
+        private final List<String> errors = new ArrayList<>();
+
+        public long getGames() {
+            return games;
+        }
+
+        public long getMoves() {
+            return moves;
+        }
+
+        public long getIllegal() {
+            return illegal;
+        }
+
+        public long getMissedMates() {
+            return missedMates;
+        }
+
+        public long getMissedStalemates() {
+            return missedStalemates;
+        }
+
+        /**
+         * The first errors found, one line each.
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public boolean isClean() {
+            return illegal == 0 && missedMates == 0 && missedStalemates == 0;
+        }
+
+        private void error(String message) {
+            if (errors.size() < MAX_ERRORS)
+                errors.add(message);
+        }
+
+        private Report merge(Report other) {
+            games += other.games;
+            moves += other.moves;
+            illegal += other.illegal;
+            missedMates += other.missedMates;
+            missedStalemates += other.missedStalemates;
+            for (String error : other.errors)
+                error(error);
+            return this;
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    public PgnValidator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public Report validate(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long chunk = Math.max(MIN_CHUNK, channel.size() / ((long) pool.getParallelism() * CHUNKS_PER_THREAD));
+            return validate(file, channel, chunk);
+        }
+    }
+
+    /**
+     * Same cutting the file in chunks of about chunkBytes.
+     */
+    Report validate(Path file, long chunkBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return validate(file, channel, chunkBytes);
+        }
+    }
+
+    private Report validate(Path file, FileChannel channel, long chunkBytes) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+        long size = channel.size();
+        for (long offset = chunkBytes; offset < size; offset += chunkBytes) {
+            long start = nextGame(channel, Math.max(offset, starts.get(starts.size() - 1) + 1));
+            if (start >= size)
+                break;
+            starts.add(start);
+            offset = start;
+        }
+        starts.add(size);
+        return pool.invoke(new Chunks(file, channel, starts, 0, starts.size() - 1));
+    }
+
+    /**
+     * Offset of the first game starting at or after offset: a [ at the start of a line after a
+     * blank one. The size of the file if there is none.
+     */
+    private static long nextGame(FileChannel channel, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER);
+        int newlines = 0; // in a row, ignoring \r
+        for (long position = Math.max(offset - 2, 0); ; ) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                return channel.size();
+            for (int i = 0; i < read; i++) {
+                byte c = buffer.get(i);
+                if (c == '[' && newlines >= 2 && position + i >= offset)
+                    return position + i;
+                if (c == '\n')
+                    newlines++;
+                else if (c != '\r')
+                    newlines = 0;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Replays the chunks from first to last, splitting them between workers.
+     */
+    private static final class Chunks extends RecursiveTask<Report> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path file;
+        private final FileChannel channel;
+        private final List<Long> starts;
+        private final int first, last;
+
+        Chunks(Path file, FileChannel channel, List<Long> starts, int first, int last) {
+            this.file = file;
+            this.channel = channel;
+            this.starts = starts;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected Report compute() {
+            if (last - first > 1) {
+                int middle = (first + last) >>> 1;
+                Chunks right = new Chunks(file, channel, starts, middle, last);
+                right.fork();
+                Report report = new Chunks(file, channel, starts, first, middle).compute();
+                return report.merge(right.join());
+            }
+            try {
+                return replay(starts.get(first), starts.get(last));
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't read " + file, e);
+            }
+        }
+
+        private Report replay(long start, long end) throws IOException {
+            Report report = new Report();
+            MoveGenerator moveGenerator = new MoveGenerator();
+            PgnReader reader = new PgnReader(new Slice(channel, start, end));
+            PgnGame game = new PgnGame();
+            while (true) {
+                try {
+                    if (!reader.next(game))
+                        break;
+                } catch (PgnException e) {
+                    report.games++;
+                    report.illegal++;
+                    report.error(file + " from byte " + start + ": " + e.getMessage());
+                    continue;
+                }
+                report.games++;
+                report.moves += game.size();
+                Position position = reader.getPosition();
+                String result = game.getResult();
+                if (moveGenerator.isCheckmate(position)) {
+                    String winner = position.getSideToMove() == Player.WHITE ? PgnGame.BLACK_WINS : PgnGame.WHITE_WINS;
+                    if (!winner.equals(result)) {
+                        report.missedMates++;
+                        report.error(file + " from byte " + start + ": game " + reader.getGames() + " ends in mate but scores " + result);
+                    }
+                } else if (moveGenerator.isStalemate(position) && !PgnGame.DRAW.equals(result)) {
+                    report.missedStalemates++;
+                    report.error(file + " from byte " + start + ": game " + reader.getGames() + " ends in stalemate but scores " + result);
+                }
+            }
+            return report;
+        }
+    }
+
+    /**
+     * The bytes of a file from start to end, read at their offsets so chunks share the channel.
+     */
+    private static final class Slice implements ReadableByteChannel {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        Slice(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            if (position >= end)
+                return -1;
+            int limit = buffer.limit();
+            if (buffer.remaining() > end - position)
+                buffer.limit(buffer.position() + (int) (end - position));
+            int read = channel.read(buffer, position);
+            buffer.limit(limit);
+            if (read > 0)
+                position += read;
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            // the channel is closed once every chunk is done
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors(), first = 0;
+        if (args.length >= 2 && args[0].equals("-threads")) {
+            threads = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        if (first >= args.length) {
+            System.err.println("Usage: PgnValidator [-threads N] file.pgn...");
+            System.exit(2);
+        }
+        PgnValidator validator = new PgnValidator(new ForkJoinPool(threads));
+        boolean clean = true;
+        for (int i = first; i < args.length; i++) {
+            Path file = Paths.get(args[i]);
+            long start = System.nanoTime();
+            Report report = validator.validate(file);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            for (String error : report.getErrors())
+                System.out.println(error);
+            System.out.println(String.format(Locale.ROOT,
+                    "%s: %d games, %d moves, %d illegal, %d missed mates, %d missed stalemates in %.2f s, %.0f games/s on %d threads",
+                    file, report.getGames(), report.getMoves(), report.getIllegal(), report.getMissedMates(),
+                    report.getMissedStalemates(), seconds, report.getGames() / seconds, threads));
+            clean &= report.isClean();
+        }
+        System.exit(clean ? 0 : 1);
+    }
+}
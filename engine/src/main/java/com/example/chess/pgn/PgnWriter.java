@@ -0,0 +1,89 @@
+package com.example.chess.pgn;
+
+import com.example.chess.Player;
+import com.example.chess.engine.Fen;
+import com.example.chess.engine.Position;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes games as PGN: the tags, then the moves in SAN numbered and wrapped in lines of at most
+ * 79 characters, then the result. The moves must be legal from the start position.
+ */
+public class PgnWriter implements Closeable, Flushable {
+    private static final int LINE_LENGTH = 79;
+
+    private final Writer out;
+    private final Position position = new Position();
+    private final San san = new San();
+    private final StringBuilder line = new StringBuilder(LINE_LENGTH + 16), word = new StringBuilder(16);
+
+    public PgnWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void write(PgnGame game) throws IOException {
+        for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+            out.write('[');
+            out.write(tag.getKey());
+            out.write(" \"");
+            String value = tag.getValue();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\')
+                    out.write('\\');
+                out.write(c);
+            }
+            out.write("\"]\n");
+        }
+        out.write('\n');
+        int fullmove = Fen.parse(game.getStartFen(), position);
+        line.setLength(0);
+        for (int i = 0; i < game.size(); i++) {
+            int move = game.getMove(i);
+            boolean white = position.getSideToMove() == Player.WHITE;
+            if (white || i == 0) {
+                word.setLength(0);
+                word.append(fullmove).append(white ? "." : "...");
+                addWord();
+            }
+            word.setLength(0);
+            san.append(position, move, word);
+            addWord();
+            position.play(move);
+            if (!white)
+                fullmove++;
+        }
+        word.setLength(0);
+        word.append(game.getResult());
+        addWord();
+        out.append(line).write("\n\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Adds the word to the line, writing the line first if the word doesn't fit.
+     */
+    private void addWord() throws IOException {
+        if (line.length() > 0 && line.length() + 1 + word.length() > LINE_LENGTH) {
+            out.append(line).write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0)
+            line.append(' ');
+        line.append(word);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.chess.pgn;
+
+import com.example.chess.PieceModel;
+import com.example.chess.Player;
+import com.example.chess.engine.Move;
+import com.example.chess.engine.MoveGenerator;
+import com.example.chess.engine.Position;
+
+/**
+ * Standard algebraic notation of moves, like Nbd7, exd6, O-O or e8=Q+, read & written against
+ * the rules of a position. Only the pieces of the model that could make the move are checked, so
+ * the legal moves are never all generated.
+ */
+public class San {
+    private static final String LETTERS = "KQRNB"; // in PieceModel order, pawns have none
+    private static final PieceModel[] MODELS = PieceModel.values();
+    private static final int FLAGS = Move.CAPTURE | Move.DOUBLE_PUSH | Move.EN_PASSANT | Move.CASTLE;
+
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+
+    /**
+     * Returns the legal move the text stands for, or Move.NONE if it's illegal, ambiguous or not
+     * SAN. Check marks & annotations like ! or ?? at the end are ignored.
+     */
+    public int parse(CharSequence text, Position position) {
+        return parse(text, 0, text.length(), position);
+    }
+
+    /**
+     * Same for the characters of text from start to end.
+     */
+    public int parse(CharSequence text, int start, int end, Position position) {
+        while (end > start && "+#!?".indexOf(text.charAt(end - 1)) >= 0)
+            end--;
+        Player player = position.getSideToMove();
+        int castle = castle(text, start, end);
+        if (castle != 0) {
+            int king = position.kingSquare(player);
+            int move = king == Position.NO_SQUARE ? Move.NONE
+                    : moveGenerator.legalMove(position, king, Position.square(Position.row(king), castle));
+            return Move.isCastle(move) ? move : Move.NONE;
+        }
+
+        PieceModel model = PieceModel.PAWN;
+        int letter = start < end ? LETTERS.indexOf(text.charAt(start)) : -1;
+        if (letter >= 0) {
+            model = MODELS[letter];
+            start++;
+        }
+        PieceModel promotion = null;
+        int crown = end > start ? LETTERS.indexOf(text.charAt(end - 1)) : -1;
+        if (crown > 0) { // not a king
+            promotion = MODELS[crown];
+            end--;
+            if (end > start && text.charAt(end - 1) == '=')
+                end--;
+        }
+        if (end - start < 2 || (promotion != null && model != PieceModel.PAWN))
+            return Move.NONE;
+        int toColumn = text.charAt(end - 2) - 'a' + 1, toRank = text.charAt(end - 1) - '0';
+        if (toColumn < 1 || toColumn > 8 || toRank < 1 || toRank > 8)
+            return Move.NONE;
+        int to = Position.square(9 - toRank, toColumn);
+        end -= 2;
+        boolean capture = end > start && (text.charAt(end - 1) == 'x' || text.charAt(end - 1) == ':');
+        if (capture)
+            end--;
+        int fromColumn = 0, fromRow = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= 'a' && c <= 'h' && fromColumn == 0 && fromRow == 0)
+                fromColumn = c - 'a' + 1;
+            else if (c >= '1' && c <= '8' && fromRow == 0)
+                fromRow = 9 - (c - '0');
+            else
+                return Move.NONE;
+        }
+
+        int found = Move.NONE;
+        for (long pieces = position.pieces(player, model); pieces != 0L; pieces &= pieces - 1) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            if ((fromColumn != 0 && Position.column(from) != fromColumn) || (fromRow != 0 && Position.row(from) != fromRow))
+                continue;
+            int move = moveGenerator.legalMove(position, from, to);
+            if (move == Move.NONE || Move.isCastle(move))
+                continue;
+            if (found != Move.NONE)
+                return Move.NONE; // ambiguous
+            found = move;
+        }
+        if (found == Move.NONE || Move.isCapture(found) != capture || (Move.promotion(found) == null) != (promotion == null))
+            return Move.NONE;
+        return promotion == null ? found : Move.crowning(Move.from(found), to, found & FLAGS, promotion);
+    }
+
+    /**
+     * Appends the legal move to out as SAN, with + for a check & # for a mate.
+     */
+    public void append(Position position, int move, StringBuilder out) {
+        int from = Move.from(move), to = Move.to(move);
+        if (Move.isCastle(move))
+            out.append(Position.column(to) == 7 ? "O-O" : "O-O-O");
+        else {
+            PieceModel model = position.modelAt(from);
+            if (model == PieceModel.PAWN) {
+                if (Move.isCapture(move))
+                    out.append(file(from));
+            } else {
+                out.append(LETTERS.charAt(model.ordinal()));
+                disambiguate(position, model, from, to, out);
+            }
+            if (Move.isCapture(move))
+                out.append('x');
+            out.append(file(to)).append(rank(to));
+            PieceModel promotion = Move.promotion(move);
+            if (promotion != null)
+                out.append('=').append(LETTERS.charAt(promotion.ordinal()));
+        }
+        position.makeMove(move);
+        if (moveGenerator.isInCheck(position, position.getSideToMove()))
+            out.append(moveGenerator.hasLegalMove(position) ? '+' : '#');
+        position.unmakeMove(move);
+    }
+
+    /**
+     * Adds the file, the rank or both of from if another piece of the model can move to the
+     * square too.
+     */
+    private void disambiguate(Position position, PieceModel model, int from, int to, StringBuilder out) {
+        boolean other = false, sameColumn = false, sameRow = false;
+        for (long pieces = position.pieces(position.getSideToMove(), model) & ~Position.mask(from); pieces != 0L; pieces &= pieces - 1) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            if (moveGenerator.legalMove(position, square, to) == Move.NONE)
+                continue;
+            other = true;
+            sameColumn |= Position.column(square) == Position.column(from);
+            sameRow |= Position.row(square) == Position.row(from);
+        }
+        if (other && (!sameColumn || sameRow))
+            out.append(file(from));
+        if (sameColumn)
+            out.append(rank(from));
+    }
+
+    /**
+     * Column the king lands on for O-O or O-O-O (also written with zeros), 0 for other text.
+     */
+    private static int castle(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length != 3 && length != 5)
+            return 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if ((i - start) % 2 == 0 ? c != 'O' && c != '0' : c != '-')
+                return 0;
+        }
+        return length == 3 ? 7 : 3;
+    }
+
+    private static char file(int square) {
+        return (char) ('a' + Position.column(square) - 1);
+    }
+
+    private static char rank(int square) {
+        return (char) ('0' + 9 - Position.row(square));
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.chess.engine;
+
+import com.example.chess.Player;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The attack map updated move by move must match one computed from scratch.
+ */
+public class AttackMapTest {
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+
+    @Test
+    public void randomGames() {
+        Random random = new Random(1858);
+        Position position = new Position();
+        AttackMap attackMap = new AttackMap(), expected = new AttackMap();
+        MoveList moves = new MoveList();
+        for (int game = 0; game < 100; game++) {
+            Fen.parse(Fen.INITIAL, position);
+            attackMap.reset(position);
+            for (int ply = 0; ply < 200; ply++) {
+                moveGenerator.generateLegalMoves(position, moves);
+                if (moves.size() == 0)
+                    break;
+                attackMap.play(position, moves.get(random.nextInt(moves.size())));
+                expected.reset(position);
+                for (Player player : Player.values()) {
+                    assertEquals(expected.attacks(player), attackMap.attacks(player));
+                    assertEquals(expected.checkers(position, player), attackMap.checkers(position, player));
+                    for (int square = 0; square < 64; square++)
+                        assertEquals(moveGenerator.isAttacked(position, square, player), attackMap.isAttacked(square, player));
+                }
+                Player player = position.getSideToMove();
+                int king = position.kingSquare(player);
+                for (long escapes = attackMap.kingEscapes(position, player); escapes != 0L; escapes &= escapes - 1)
+                    assertNotEquals(Move.NONE, moveGenerator.legalMove(position, king, Long.numberOfTrailingZeros(escapes)));
+            }
+        }
+    }
+
+    @Test
+    public void pinsAndChecks() {
+        Random random = new Random(1886);
+        Position position = new Position();
+        AttackMap attackMap = new AttackMap();
+        MoveList moves = new MoveList();
+        for (int game = 0; game < 20; game++) {
+            Fen.parse(Fen.INITIAL, position);
+            attackMap.reset(position);
+            for (int ply = 0; ply < 200; ply++) {
+                for (long pieces = position.occupancy(position.getSideToMove()); pieces != 0L; pieces &= pieces - 1) {
+                    int from = Long.numberOfTrailingZeros(pieces);
+                    for (int to = 0; to < 64; to++)
+                        assertEquals(moveGenerator.legalMove(position, from, to), moveGenerator.legalMove(position, attackMap, from, to));
+                }
+                moveGenerator.generateLegalMoves(position, moves);
+                if (moves.size() == 0)
+                    break;
+                attackMap.play(position, moves.get(random.nextInt(moves.size())));
+            }
+        }
+    }
+}
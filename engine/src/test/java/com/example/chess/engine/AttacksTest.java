@@ -0,0 +1,24 @@
+package com.example.chess.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The magic lookups must give the same attacks as walking the rays.
+ */
+public class AttacksTest {
+    @Test
+    public void magicsMatchRays() {
+        Random random = new Random(1851);
+        for (int square = 0; square < 64; square++) {
+            for (int i = 0; i < 1000; i++) {
+                long occupied = random.nextLong() & random.nextLong();
+                assertEquals(Attacks.rayRook(square, occupied), Attacks.rook(square, occupied));
+                assertEquals(Attacks.rayBishop(square, occupied), Attacks.bishop(square, occupied));
+            }
+        }
+    }
+}
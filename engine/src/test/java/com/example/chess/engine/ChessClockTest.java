@@ -0,0 +1,60 @@
+package com.example.chess.engine;
+
+import com.example.chess.Player;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChessClockTest {
+    private static final long MILLI = 1000000L;
+
+    private long time = 5000 * MILLI; // fake monotonic clock
+
+    @Test
+    public void movesAreChargedExactly() {
+        ChessClock clock = new ChessClock(60000, 0, ChessClock.Mode.SUDDEN_DEATH, () -> time);
+        clock.start(Player.WHITE);
+        time += 1234567;
+        assertEquals(1234567, clock.press());
+        assertEquals(60000 * MILLI - 1234567, clock.remainingNanos(Player.WHITE));
+        assertEquals(Player.BLACK, clock.getRunning());
+        time += 400 * MILLI;
+        assertEquals(60000 * MILLI - 400 * MILLI, clock.remainingNanos(Player.BLACK));
+        assertEquals(60000 * MILLI - 1234567, clock.remainingNanos(Player.WHITE)); // not running
+        time += 60000 * MILLI;
+        assertTrue(clock.isFlagged(Player.BLACK));
+    }
+
+    @Test
+    public void incrementAndDelay() {
+        ChessClock fischer = new ChessClock(3000, 2000, ChessClock.Mode.FISCHER, () -> time);
+        ChessClock bronstein = new ChessClock(3000, 2000, ChessClock.Mode.BRONSTEIN, () -> time);
+        fischer.start(Player.WHITE);
+        bronstein.start(Player.WHITE);
+        time += 500 * MILLI;
+        fischer.press();
+        bronstein.press();
+        assertEquals(4500 * MILLI, fischer.remainingNanos(Player.WHITE));
+        assertEquals(3000 * MILLI, bronstein.remainingNanos(Player.WHITE)); // got back all it spent
+        time += 2500 * MILLI;
+        bronstein.press();
+        assertEquals(2500 * MILLI, bronstein.remainingNanos(Player.BLACK)); // got back only 2 s
+        assertEquals(2500 * MILLI, bronstein.lastMoveNanos(Player.BLACK));
+    }
+
+    @Test
+    public void displayChanges() {
+        ChessClock clock = new ChessClock(300000, 0, ChessClock.Mode.SUDDEN_DEATH, () -> time);
+        assertEquals("[ 5:00 ]", ChessClock.format(clock.remainingNanos(Player.WHITE)));
+        clock.start(Player.WHITE);
+        time += 250 * MILLI;
+        assertEquals("[ 4:59 ]", ChessClock.format(clock.remainingNanos(Player.WHITE)));
+        assertEquals(750 * MILLI + 1, clock.nanosToNextChange(Player.WHITE));
+        assertEquals(Long.MAX_VALUE, clock.nanosToNextChange(Player.BLACK));
+        time += 290700 * MILLI;
+        assertEquals("[ 0:09.0 ]", ChessClock.format(clock.remainingNanos(Player.WHITE)));
+        assertEquals(50 * MILLI + 1, clock.nanosToNextChange(Player.WHITE));
+        assertEquals("[ 0:00.0 ]", ChessClock.format(-1));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.chess.engine;
+
+import com.example.chess.PieceModel;
+import com.example.chess.Player;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EngineExecutorTest {
+    @Test
+    public void interactiveJobsGoFirst() throws InterruptedException {
+        EngineExecutor executor = new EngineExecutor(1, Runnable::run);
+        CountDownLatch busy = new CountDownLatch(1), finished = new CountDownLatch(3);
+        List<String> order = new CopyOnWriteArrayList<>();
+        executor.submit(EngineExecutor.Priority.BACKGROUND, () -> busy.await(5, TimeUnit.SECONDS), null, result -> finished.countDown());
+        executor.submit(EngineExecutor.Priority.BACKGROUND, () -> "analysis", null, result -> {
+            order.add(result);
+            finished.countDown();
+        });
+        executor.submit(EngineExecutor.Priority.INTERACTIVE, () -> "hint", null, result -> {
+            order.add(result);
+            finished.countDown();
+        });
+        busy.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals("hint", order.get(0));
+        assertEquals("analysis", order.get(1));
+        executor.shutdown();
+    }
+
+    @Test
+    public void cancelledJobsDeliverNothing() throws InterruptedException {
+        EngineExecutor executor = new EngineExecutor(1, Runnable::run);
+        Search search = new Search(new TranspositionTable(1));
+        List<Integer> moves = new CopyOnWriteArrayList<>();
+        Position position = new Position();
+        position.put(Player.WHITE, PieceModel.KING, Position.square(8, 5));
+        position.put(Player.WHITE, PieceModel.ROOK, Position.square(8, 1));
+        position.put(Player.WHITE, PieceModel.KNIGHT, Position.square(8, 7));
+        position.put(Player.BLACK, PieceModel.KING, Position.square(1, 5));
+        position.put(Player.BLACK, PieceModel.ROOK, Position.square(1, 8));
+        position.put(Player.BLACK, PieceModel.BISHOP, Position.square(1, 3));
+        EngineExecutor.Job<Integer> job = executor.bestMove(search, position, 60000, moves::add);
+        Thread.sleep(50);
+        long start = System.nanoTime();
+        job.cancel();
+        CountDownLatch after = new CountDownLatch(1);
+        executor.submit(EngineExecutor.Priority.INTERACTIVE, () -> 0, null, result -> after.countDown());
+        assertTrue(after.await(5, TimeUnit.SECONDS)); // the search stopped instead of running a minute
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(job.isCancelled());
+        assertTrue(moves.isEmpty());
+        executor.shutdown();
+    }
+
+    @Test
+    public void cancelReachesResultsAwaitingDelivery() throws InterruptedException {
+        List<Runnable> posted = new CopyOnWriteArrayList<>(); // a UI thread that hasn't run yet
+        EngineExecutor executor = new EngineExecutor(1, posted::add);
+        List<String> results = new ArrayList<>();
+        EngineExecutor.Job<String> job = executor.submit(EngineExecutor.Priority.INTERACTIVE, () -> "stale", null, results::add);
+        for (long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5); posted.isEmpty() && System.nanoTime() < end; )
+            Thread.sleep(1);
+        executor.cancelAll();
+        for (Runnable delivery : posted)
+            delivery.run();
+        assertTrue(job.isCancelled());
+        assertTrue(results.isEmpty());
+        executor.shutdown();
+    }
+
+    @Test
+    public void cancelBeforeTheSearchStartsSticks() throws InterruptedException {
+        EngineExecutor executor = new EngineExecutor(2, Runnable::run);
+        Search search = new Search(new TranspositionTable(1));
+        Position position = new Position();
+        Fen.parse(Fen.INITIAL, position);
+        EngineExecutor.Job<Integer> first = executor.bestMove(search, position, 60000, move -> { });
+        Thread.sleep(50);
+        EngineExecutor.Job<Integer> second = executor.bestMove(search, position, 60000, move -> { }); // waits for the search
+        Thread.sleep(50);
+        second.cancel();
+        first.cancel();
+        long start = System.nanoTime();
+        search.bestMove(position, 1, 1); // once both jobs let go of the search
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.chess.engine;
+
+import com.example.chess.PieceModel;
+import com.example.chess.Player;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FenTest {
+    private final Position position = new Position();
+
+    @Test
+    public void readsAndWritesBack() {
+        String[] fens = {
+                Fen.INITIAL,
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                "rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b Kq e3 0 3",
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 37 60"};
+        for (String fen : fens) {
+            int fullmove = Fen.parse(fen, position);
+            assertEquals(fen, Fen.toString(position, fullmove));
+            assertEquals(Zobrist.key(position), position.getKey());
+        }
+        assertEquals(Position.square(6, 5), position("rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b Kq e3 0 3").getEnPassantSquare());
+    }
+
+    @Test
+    public void fillsThePosition() {
+        Fen.parse("4k3/8/8/8/8/8/8/4K2R b K - 5 40", position);
+        assertEquals(Player.BLACK, position.getSideToMove());
+        assertEquals(Position.WHITE_SHORT_CASTLE, position.getCastlingRights());
+        assertEquals(5, position.getHalfmoveClock());
+        assertEquals(PieceModel.ROOK, position.modelAt(Position.square(8, 8)));
+        assertEquals(Player.WHITE, position.playerAt(Position.square(8, 8)));
+        assertEquals(Position.square(1, 5), position.kingSquare(Player.BLACK));
+        assertEquals(3, Long.bitCount(position.occupied()));
+        assertEquals(1, Fen.parse("4k3/8/8/8/8/8/8/4K3 w", position)); // the last fields can be left out
+    }
+
+    @Test
+    public void dropsCastlesWithoutTheirPieces() {
+        Fen.parse("r3k3/8/8/8/8/8/8/1R2K2R w KQkq - 0 1", position); // no black h8 rook, white a1 rook on b1
+        assertEquals(Position.WHITE_SHORT_CASTLE | Position.BLACK_LONG_CASTLE, position.getCastlingRights());
+        Fen.parse("r3k2r/8/8/8/8/8/8/R4K1R w KQkq - 0 1", position); // white king moved
+        assertEquals(Position.BLACK_SHORT_CASTLE | Position.BLACK_LONG_CASTLE, position.getCastlingRights());
+    }
+
+    @Test
+    public void rejectsMalformedText() {
+        String[] fens = {
+                "",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP w KQkq - 0 1", // 7 rows
+                "rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNRR w KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQQBNR w KQkq - 0 1", // no white king
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR x KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KXkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e4 0 1",
+                "rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR w Kq e3 0 3", // white just moved
+                "4k3/8/8/3P4/8/8/8/4K3 w - e6 0 1", // no black pawn on e5
+                "4k3/4p3/8/3Pp3/8/8/8/4K3 w - e6 0 1", // the e7 pawn hasn't moved
+                "4k3/8/4n3/3Pp3/8/8/8/4K3 w - e6 0 1",
+                "rnbqkbnP/pppppppp/8/8/8/8/PPPPPPP1/RNBQKBNR w KQkq - 0 1", // a pawn on the last rank
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPP1/RNBQKBNp w KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - x 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 extra"};
+        for (String fen : fens) {
+            try {
+                Fen.parse(fen, position);
+                fail("Parsed " + fen);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    private static Position position(String fen) {
+        Position position = new Position();
+        Fen.parse(fen, position);
+        return position;
+    }
+}
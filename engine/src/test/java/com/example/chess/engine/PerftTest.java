@@ -0,0 +1,78 @@
+package com.example.chess.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Perft node counts of well known positions, see https://www.chessprogramming.org/Perft_Results
+ */
+public class PerftTest {
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+
+    @Test
+    public void initialPosition() {
+        Position position = position(Fen.INITIAL);
+        assertEquals(20, moveGenerator.perft(position, 1));
+        assertEquals(400, moveGenerator.perft(position, 2));
+        assertEquals(8902, moveGenerator.perft(position, 3));
+        assertEquals(197281, moveGenerator.perft(position, 4));
+    }
+
+    @Test
+    public void castlesAndCrownings() {
+        Position position = position("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        assertEquals(48, moveGenerator.perft(position, 1));
+        assertEquals(2039, moveGenerator.perft(position, 2));
+        assertEquals(97862, moveGenerator.perft(position, 3));
+    }
+
+    @Test
+    public void enPassantAndPins() {
+        Position position = position("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+        assertEquals(14, moveGenerator.perft(position, 1));
+        assertEquals(191, moveGenerator.perft(position, 2));
+        assertEquals(2812, moveGenerator.perft(position, 3));
+        assertEquals(43238, moveGenerator.perft(position, 4));
+    }
+
+    @Test
+    public void makeAndUnmakeMoves() {
+        Position position = position("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        Position initial = new Position();
+        initial.copyFrom(position);
+        Random random = new Random(1972);
+        MoveList moves = new MoveList();
+        int[] played = new int[100];
+        int plies = 0;
+        while (plies < played.length) {
+            moveGenerator.generateLegalMoves(position, moves);
+            if (moves.size() == 0)
+                break;
+            played[plies] = moves.get(random.nextInt(moves.size()));
+            position.makeMove(played[plies++]);
+            assertEquals(Zobrist.key(position), position.getKey());
+        }
+        assertEquals(plies, position.undoSize());
+        while (plies > 0)
+            position.unmakeMove(played[--plies]);
+        for (int square = 0; square < 64; square++) {
+            assertEquals(initial.playerAt(square), position.playerAt(square));
+            assertEquals(initial.modelAt(square), position.modelAt(square));
+        }
+        assertEquals(initial.occupied(), position.occupied());
+        assertEquals(initial.getSideToMove(), position.getSideToMove());
+        assertEquals(initial.getCastlingRights(), position.getCastlingRights());
+        assertEquals(initial.getEnPassantSquare(), position.getEnPassantSquare());
+        assertEquals(initial.getHalfmoveClock(), position.getHalfmoveClock());
+        assertEquals(initial.getKey(), position.getKey());
+    }
+
+    private static Position position(String fen) {
+        Position position = new Position();
+        Fen.parse(fen, position);
+        return position;
+    }
+}
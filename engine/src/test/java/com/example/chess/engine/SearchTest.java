@@ -0,0 +1,53 @@
+package com.example.chess.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SearchTest {
+    private final Search search = new Search(new TranspositionTable(4));
+
+    @Test
+    public void matesInOne() {
+        Position position = play("e2e4 e7e5 f1c4 b8c6 d1h5 g8f6");
+        int move = search.bestMove(position, 10000, 4);
+        assertEquals(Position.square(2, 6), Move.to(move)); // Qxf7#
+        assertEquals(Search.MATE - 1, search.getScore());
+    }
+
+    @Test
+    public void takesTheHangingQueen() {
+        Position position = play("e2e4 e7e5 d1h5 d8g5");
+        int move = search.bestMove(position, 10000, 3);
+        assertEquals(Position.square(4, 7), Move.to(move));
+    }
+
+    @Test
+    public void analysisOnThreadsMates() {
+        Analysis analysis = new Analysis(3, 4);
+        int move = analysis.bestMove(play("e2e4 e7e5 f1c4 b8c6 d1h5 g8f6"), 10000, 4);
+        assertEquals(Position.square(2, 6), Move.to(move));
+        assertEquals(Search.MATE - 1, analysis.getScore());
+    }
+
+    @Test
+    public void noMoveWhenMated() {
+        Position position = play("f2f3 e7e5 g2g4 d8h4");
+        assertEquals(Move.NONE, search.bestMove(position, 10000, 4));
+    }
+
+    /**
+     * Plays moves like e2e4 from the initial position.
+     */
+    private static Position play(String moves) {
+        Position position = new Position();
+        Fen.parse(Fen.INITIAL, position);
+        MoveGenerator moveGenerator = new MoveGenerator();
+        for (String move : moves.split(" ")) {
+            int from = Position.square(9 - (move.charAt(1) - '0'), move.charAt(0) - 'a' + 1);
+            int to = Position.square(9 - (move.charAt(3) - '0'), move.charAt(2) - 'a' + 1);
+            position.play(moveGenerator.legalMove(position, from, to));
+        }
+        return position;
+    }
+}
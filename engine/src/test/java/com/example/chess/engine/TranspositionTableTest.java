@@ -0,0 +1,40 @@
+package com.example.chess.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TranspositionTableTest {
+    private final TranspositionTable table = new TranspositionTable(1);
+
+    @Test
+    public void storeAndProbe() {
+        int move = Move.of(52, 36, Move.DOUBLE_PUSH);
+        table.store(0x1234_5678_9ABC_DEF0L, move, -31000, 12, TranspositionTable.LOWER_BOUND);
+        long data = table.probe(0x1234_5678_9ABC_DEF0L);
+        assertNotEquals(TranspositionTable.MISS, data);
+        assertEquals(move, TranspositionTable.move(data));
+        assertEquals(-31000, TranspositionTable.score(data));
+        assertEquals(12, TranspositionTable.depth(data));
+        assertEquals(TranspositionTable.LOWER_BOUND, TranspositionTable.bound(data));
+    }
+
+    @Test
+    public void otherPositionsMiss() {
+        long key = 0x0F0F_0F0F_0000_0001L;
+        table.store(key, Move.NONE, 0, 0, TranspositionTable.EXACT);
+        assertEquals(TranspositionTable.MISS, table.probe(key + table.size())); // same slot, other key
+        assertEquals(TranspositionTable.MISS, table.probe(key + 1));
+        assertNotEquals(TranspositionTable.MISS, table.probe(key));
+    }
+
+    @Test
+    public void deeperEntriesStay() {
+        long key = 0x7777_0000_1111_2222L;
+        table.store(key, Move.NONE, 50, 8, TranspositionTable.EXACT);
+        table.store(key, Move.NONE, 10, 3, TranspositionTable.EXACT);
+        assertEquals(8, TranspositionTable.depth(table.probe(key)));
+        table.store(key + table.size(), Move.NONE, 10, 1, TranspositionTable.EXACT);
+        assertEquals(TranspositionTable.MISS, table.probe(key));
+    }
+}
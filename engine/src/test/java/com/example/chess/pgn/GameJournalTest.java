@@ -0,0 +1,100 @@
+package com.example.chess.pgn;
+
+import com.example.chess.engine.ChessClock;
+import com.example.chess.engine.Fen;
+import com.example.chess.engine.Position;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class GameJournalTest {
+    private static final long SECOND = 1000000000L;
+
+    private final San san = new San();
+    private final PgnGame record = new PgnGame();
+    private final Position position = new Position();
+
+    @Test
+    public void replaysTheLogOverTheSnapshot() throws IOException {
+        File directory = Files.createTempDirectory("journal").toFile();
+        try {
+            GameJournal journal = new GameJournal(directory);
+            Fen.parse(Fen.INITIAL, position);
+            record.setTag("Event", "Casual game");
+            journal.snapshot(record, position, 300 * SECOND, 300 * SECOND, 300000, 2000, ChessClock.Mode.FISCHER);
+            play(journal, "e4", 290);
+            play(journal, "e5", 280);
+            journal.snapshot(record, position, 290 * SECOND, 280 * SECOND, 300000, 2000, ChessClock.Mode.FISCHER);
+            play(journal, "Nf3", 270);
+            Position before = new Position();
+            before.copyFrom(position);
+            play(journal, "Nc6", 260);
+            journal.append(3, san.parse("Nf6", before), 270 * SECOND, 250 * SECOND); // replaces Nc6
+            assertNotNull(journal.load()); // waits for the writes
+            journal.close();
+            try (FileOutputStream log = new FileOutputStream(new File(directory, "autosave.wal"), true)) {
+                log.write(new byte[]{1, 2, 3, 4, 5}); // torn by a crash
+            }
+
+            journal = new GameJournal(directory); // a relaunch
+            GameJournal.Saved saved = journal.load();
+            assertEquals(4, saved.getRecord().size());
+            assertEquals("Casual game", saved.getRecord().getTag("Event"));
+            assertEquals(3, saved.getFullmove());
+            assertEquals("rnbqkb1r/pppp1ppp/5n2/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3", Fen.toString(saved.getPosition(), saved.getFullmove()));
+            assertEquals(270 * SECOND, saved.getWhiteNanos());
+            assertEquals(250 * SECOND, saved.getBlackNanos());
+            assertEquals(2000, saved.getIncrementMillis());
+            assertEquals(ChessClock.Mode.FISCHER, saved.getMode());
+
+            journal.append(4, san.parse("Bc4", saved.getPosition()), 260 * SECOND, 250 * SECOND); // after the torn entry
+            assertEquals(5, journal.load().getRecord().size());
+            assertEquals(0, new File(directory, "autosave.wal").length() % 28); // whole entries, the torn one is gone
+
+            journal.clear();
+            assertNull(journal.load());
+            journal.close();
+        } finally {
+            for (File file : directory.listFiles())
+                assertTrue(file.delete());
+            assertTrue(directory.delete());
+        }
+    }
+
+    @Test
+    public void reportsWritesThatFail() throws IOException {
+        File directory = new File(Files.createTempDirectory("journal").toFile(), "missing");
+        try {
+            GameJournal journal = new GameJournal(directory);
+            List<Exception> failures = new CopyOnWriteArrayList<>();
+            journal.setFailureCallback(failures::add);
+            Fen.parse(Fen.INITIAL, position);
+            journal.snapshot(record, position, 300 * SECOND, 300 * SECOND, 300000, 0, ChessClock.Mode.SUDDEN_DEATH);
+            play(journal, "e4", 300);
+            assertNull(journal.load()); // the thread goes on
+            assertEquals(2, failures.size());
+            journal.close();
+        } finally {
+            assertTrue(directory.getParentFile().delete());
+        }
+    }
+
+    /**
+     * Plays the move & logs it, with the mover's clock at seconds.
+     */
+    private void play(GameJournal journal, String text, long seconds) {
+        int move = san.parse(text, position);
+        assertNotEquals(text, 0, move);
+        journal.append(record.size(), move, seconds * SECOND, seconds * SECOND);
+        record.addMove(move);
+        position.play(move);
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.chess.pgn;
+
+import com.example.chess.PieceModel;
+import com.example.chess.engine.Fen;
+import com.example.chess.engine.Move;
+import com.example.chess.engine.MoveGenerator;
+import com.example.chess.engine.Position;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class PgnTest {
+    private static final String GAMES = "[Event \"Paris\"]\n"
+            + "[White \"Morphy, Paul\"]\n"
+            + "[Black \"Duke Karl / Count Isouard\"]\n"
+            + "[Result \"1-0\"]\n"
+            + "\n"
+            + "1. e4 e5 2. Nf3 d6 3. d4 Bg4 {this is a weak move} 4. dxe5 Bxf3 5. Qxf3 dxe5 6.\n"
+            + "Bc4 Nf6 7. Qb3 Qe7 8. Nc3 c6 9. Bg5 b5 $2 (9... Qb4+ 10. Qxb4 Bxb4) 10. Nxb5\n"
+            + "cxb5 11. Bxb5+ Nbd7 12. O-O-O Rd8 13. Rxd7 Rxd7 14. Rd1 Qe6 15. Bxd7+ Nxd7\n"
+            + "16. Qb8+! Nxb8 17. Rd8# 1-0\n"
+            + "\n"
+            + "[Event \"Crowning\"]\n"
+            + "[SetUp \"1\"]\n"
+            + "[FEN \"4k3/P7/8/3pP3/8/8/8/4K3 w - d6 0 30\"]\n"
+            + "\n"
+            + "30. exd6 Kd7 ; the king runs\n"
+            + "31. a8=N Kxd6 *\n"
+            + "\n"
+            + "[Event \"Illegal\"]\n"
+            + "\n"
+            + "1. e4 e5 2. Ke3 Nc6 1/2-1/2\n"
+            + "\n"
+            + "[Event \"After\"]\n"
+            + "\n"
+            + "1.d4 d5 2.c4 dxc4 0-1\n";
+
+    @Test
+    public void readsAndValidatesGames() throws IOException {
+        PgnReader reader = reader(GAMES);
+        PgnGame game = new PgnGame();
+        assertTrue(reader.next(game));
+        assertEquals("Morphy, Paul", game.getTag("White"));
+        assertEquals(PgnGame.WHITE_WINS, game.getResult());
+        assertEquals(33, game.size());
+        assertTrue(new MoveGenerator().isCheckmate(reader.getPosition()));
+
+        assertTrue(reader.next(game));
+        assertEquals(4, game.size());
+        assertTrue(Move.isEnPassant(game.getMove(0)));
+        assertEquals("N7/8/3k4/8/8/8/8/4K3 w - - 0 32", Fen.toString(reader.getPosition(), 32));
+
+        try {
+            reader.next(game);
+            fail("Read an illegal move");
+        } catch (PgnException e) {
+            assertEquals(3, e.getGame());
+            assertEquals(20, e.getLine());
+        }
+        assertTrue(reader.next(game)); // the reader went on after the bad game
+        assertEquals("After", game.getTag("Event"));
+        assertEquals(4, game.size());
+        assertFalse(reader.next(game));
+    }
+
+    @Test
+    public void writesWhatItReads() throws IOException {
+        PgnReader reader = reader(GAMES.substring(0, GAMES.indexOf("[Event \"Illegal\"]")));
+        PgnGame game = new PgnGame();
+        StringWriter text = new StringWriter();
+        PgnWriter writer = new PgnWriter(text);
+        int[][] moves = new int[2][];
+        for (int i = 0; i < 2; i++) {
+            assertTrue(reader.next(game));
+            writer.write(game);
+            moves[i] = new int[game.size()];
+            for (int j = 0; j < game.size(); j++)
+                moves[i][j] = game.getMove(j);
+        }
+        assertTrue(text.toString().contains("12. O-O-O Rd8"));
+        assertTrue(text.toString().contains("30. exd6 Kd7 31. a8=N Kxd6 *"));
+        reader = reader(text.toString());
+        for (int i = 0; i < 2; i++) {
+            assertTrue(reader.next(game));
+            assertEquals(moves[i].length, game.size());
+            for (int j = 0; j < game.size(); j++)
+                assertEquals(moves[i][j], game.getMove(j));
+        }
+        for (String line : text.toString().split("\n"))
+            assertTrue(line.length() <= 79);
+    }
+
+    @Test
+    public void disambiguatesMoves() {
+        San san = new San();
+        Position position = new Position();
+        Fen.parse("4k3/8/8/R7/8/8/8/R2NKN2 w - - 0 1", position);
+        String[] moves = {"R1a3", "R5a3", "Nde3", "Nfe3", "Nc3", "Nd2", "Rb5", "Kd2"};
+        for (String text : moves) {
+            int move = san.parse(text, position);
+            assertNotEquals(text, Move.NONE, move);
+            StringBuilder out = new StringBuilder();
+            san.append(position, move, out);
+            assertEquals(text, out.toString());
+        }
+        assertEquals(Move.NONE, san.parse("Ra3", position)); // ambiguous
+        assertEquals(Move.NONE, san.parse("Ne3", position));
+        assertEquals(Move.NONE, san.parse("Rxa3", position)); // nothing to take
+    }
+
+    @Test
+    public void validatesChunksInParallel() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50; i++)
+            text.append(GAMES).append('\n');
+        text.append("[Event \"Stalemate\"]\n[FEN \"7k/4Q3/6K1/8/8/8/8/8 w - - 0 1\"]\n\n1. Qf7 1-0\n");
+        Path file = Files.createTempFile("games", ".pgn");
+        try {
+            Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+            PgnValidator.Report report = new PgnValidator(new ForkJoinPool(4)).validate(file, 100);
+            assertEquals(201, report.getGames());
+            assertEquals(50 * (33 + 4 + 4) + 1, report.getMoves());
+            assertEquals(50, report.getIllegal());
+            assertEquals(0, report.getMissedMates());
+            assertEquals(1, report.getMissedStalemates());
+            assertFalse(report.isClean());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void archivesGames() throws IOException {
+        PgnReader reader = reader(GAMES.substring(0, GAMES.indexOf("[Event \"Illegal\"]")));
+        PgnGame[] games = {new PgnGame(), new PgnGame()};
+        for (PgnGame game : games)
+            assertTrue(reader.next(game));
+        games[0].setTermination(PgnGame.Termination.CHECKMATE);
+        games[0].setClocks(61000, 2500);
+        Path file = Files.createTempFile("games", ".bin");
+        try {
+            for (PgnGame game : games) { // the second time appends
+                try (GameArchiveWriter writer = new GameArchiveWriter(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))) {
+                    writer.write(game);
+                }
+            }
+            try (GameArchiveReader archive = new GameArchiveReader(FileChannel.open(file, StandardOpenOption.READ))) {
+                assertEquals(2, archive.size());
+                assertEquals(PgnGame.Termination.CHECKMATE, archive.getTermination(0));
+                assertEquals(2500, archive.getBlackMillis(0));
+                assertEquals(PgnGame.NO_TIME, archive.getWhiteMillis(1));
+                assertEquals(PieceModel.KNIGHT, Move.promotion(archive.getMove(1, 2)));
+                PgnGame game = new PgnGame();
+                for (int i = 1; i >= 0; i--) {
+                    archive.read(i, game);
+                    assertEquals(games[i].getResult(), game.getResult());
+                    assertEquals(games[i].getStartFen(), game.getStartFen());
+                    assertEquals(games[i].size(), game.size());
+                    for (int j = 0; j < game.size(); j++)
+                        assertEquals(games[i].getMove(j), game.getMove(j));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void keepsTheArchiveWhenAnAppendIsCutShort() throws IOException {
+        PgnReader reader = reader(GAMES.substring(0, GAMES.indexOf("[Event \"Illegal\"]")));
+        PgnGame[] games = {new PgnGame(), new PgnGame()};
+        for (PgnGame game : games)
+            assertTrue(reader.next(game));
+        Path file = Files.createTempFile("games", ".bin");
+        try {
+            try (GameArchiveWriter writer = new GameArchiveWriter(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))) {
+                writer.write(games[0]);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(GameArchiveReader.HEADER_SIZE);
+                channel.read(header, 0);
+                channel.write(ByteBuffer.wrap(new byte[]{0, 40, 1, 0, 0, 0}), header.getInt(GameArchiveReader.GAMES_END)); // over the index
+                channel.truncate(header.getInt(GameArchiveReader.GAMES_END) + 6); // the process died here
+            }
+            try (GameArchiveReader archive = new GameArchiveReader(FileChannel.open(file, StandardOpenOption.READ))) {
+                assertEquals(1, archive.size());
+                assertEquals(games[0].size(), archive.getMoveCount(0));
+            }
+            try (GameArchiveWriter writer = new GameArchiveWriter(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))) {
+                writer.write(games[1]);
+            }
+            try (GameArchiveReader archive = new GameArchiveReader(FileChannel.open(file, StandardOpenOption.READ))) {
+                assertEquals(2, archive.size());
+                assertEquals(games[1].size(), archive.getMoveCount(1));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A reader getting a few bytes at a time, so the buffer is refilled mid token.
+     */
+    private static PgnReader reader(String text) {
+        InputStream bytes = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+        return new PgnReader(Channels.newChannel(new FilterInputStream(bytes) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 7));
+            }
+        }));
+    }
+}